@@ -0,0 +1,32 @@
+package de.djl.classification;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Einstieg für {@code exec:exec@jmh}: wie {@link org.openjdk.jmh.Main}, setzt aber den Parameter {@code setting}
+ * von {@link ModelBench} auf alle Einträge aus {@code settings.json}, sofern nicht per {@code -p setting=...}
+ * gewählt – neue Settings werden so ohne Änderung am Benchmark mitgemessen.
+ */
+public final class BenchMain {
+    private BenchMain() { }
+
+    public static void main(String[] argv) throws IOException {
+        boolean chosen = false;
+        for (int i = 0; i < argv.length; i++) {
+            chosen |= argv[i].startsWith("-psetting=")
+                    || argv[i].equals("-p") && i + 1 < argv.length && argv[i + 1].startsWith("setting=");
+        }
+        List<String> args = new ArrayList<>();
+        if (!chosen) {
+            String names = Settings.loadFromResources("settings.json").all().stream()
+                    .map(s -> s.name).collect(Collectors.joining(","));
+            args.add("-p");
+            args.add("setting=" + names);
+        }
+        args.addAll(List.of(argv));
+        org.openjdk.jmh.Main.main(args.toArray(String[]::new));
+    }
+}
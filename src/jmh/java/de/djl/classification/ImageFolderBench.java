@@ -0,0 +1,69 @@
+package de.djl.classification;
+
+import ai.djl.ndarray.NDManager;
+import ai.djl.training.dataset.Batch;
+import ai.djl.training.dataset.RandomAccessDataset;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch-Aufbau über {@link CNNPipeline#buildImageFolder} (JPEG-Decode, Resize, ToTensor, Normalize, Batchify):
+ * eine Epoche über einen synthetischen Zwei-Klassen-Baum, synchron bzw. mit Loader-Threads.
+ * Ergebnis pro Epoche; geteilt durch {@code images / batch} ergibt sich die Zeit pro Batch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImageFolderBench {
+
+    @Param({"256"})
+    public int images;
+
+    @Param({"32"})
+    public int batch;
+
+    @Param({"224"})
+    public int imageSize;
+
+    @Param({"0", "2", "4"})
+    public int loaderWorkers;
+
+    private Path root;
+    private NDManager manager;
+    private RandomAccessDataset dataset;
+    private ExecutorService loader;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        root = Synthetic.imageFolder(Files.createTempDirectory("bench-folder"), 2, images / 2, 256);
+        manager = NDManager.newBaseManager();
+        dataset = CNNPipeline.buildImageFolder(root, imageSize, batch, true, 4);
+        loader = loaderWorkers > 0 ? Executors.newFixedThreadPool(loaderWorkers) : null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (loader != null) loader.shutdownNow();
+        manager.close();
+        Preprocessing.deleteTree(root);
+    }
+
+    @Benchmark
+    public long epoch() throws Exception {
+        long samples = 0;
+        Iterable<Batch> batches = loader == null ? dataset.getData(manager) : dataset.getData(manager, loader);
+        for (Batch b : batches) {
+            samples += b.getSize();
+            b.close();
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,64 @@
+package de.djl.classification;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.Shape;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ImageUtils#saveFeatureGrid} und {@link ImageUtils#saveVectorStripe} mit Kanalzahlen und Feature-Map-Größen,
+ * wie sie die Settings liefern (conv1_pre bei 224 px bis conv3_pool von {@code deep_slow}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImageUtilsBench {
+
+    /** Kanäle x Höhe/Breite der Aktivierung. */
+    @Param({"32x224", "64x112", "256x28", "512x14"})
+    public String feature;
+
+    /** Länge eines Dense-Vektors (fc/logits). */
+    @Param({"128", "512"})
+    public int units;
+
+    private NDManager manager;
+    private NDArray grid;
+    private NDArray vector;
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        String[] ch = feature.split("x");
+        int c = Integer.parseInt(ch[0]), hw = Integer.parseInt(ch[1]);
+        manager = NDManager.newBaseManager();
+        manager.getEngine().setRandomSeed(1);
+        grid = manager.randomNormal(new Shape(c, hw, hw));
+        vector = manager.randomNormal(new Shape(units));
+        dir = Files.createTempDirectory("bench-img");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        manager.close();
+        Preprocessing.deleteTree(dir);
+    }
+
+    @Benchmark
+    public void featureGrid() throws IOException {
+        ImageUtils.saveFeatureGrid(grid, dir.resolve("grid.png"), 96);
+    }
+
+    @Benchmark
+    public void vectorStripe() throws IOException {
+        ImageUtils.saveVectorStripe(vector, dir.resolve("stripe.png"), 32);
+    }
+}
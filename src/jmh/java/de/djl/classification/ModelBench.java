@@ -0,0 +1,94 @@
+package de.djl.classification;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.training.DefaultTrainingConfig;
+import ai.djl.training.GradientCollector;
+import ai.djl.training.Trainer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forward (Inferenz) und Forward+Backward des Netzes aus {@link ClassificationModel#buildBlock} für jedes
+ * Setting aus {@code settings.json}, jeweils mit scharf geschalteten Taps und ohne Taps. Die Settings setzt
+ * {@link BenchMain} (einzelne per {@code -p setting=...}); Batchgröße per {@code -p batch=...} (Standard 8,
+ * {@code 0} = Batchgröße des Settings). Die Eingabe wird nicht kopiert, sondern nur für die Dauer eines Aufrufs an
+ * einen Scope gehängt, der die Zwischenergebnisse freigibt.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModelBench {
+
+    /** {@link BenchMain} ersetzt den Platzhalter durch alle Settings aus {@code settings.json}. */
+    @Param({"baseline"})
+    public String setting;
+
+    @Param({"false", "true"})
+    public boolean taps;
+
+    @Param({"224"})
+    public int imageSize;
+
+    @Param({"8"})
+    public int batch;
+
+    private ClassificationModel cm;
+    private Trainer trainer;
+    private NDArray input;
+    private NDArray labels;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Settings.Setting s = Settings.loadFromResources("settings.json").get(setting);
+        int n = batch > 0 ? batch : s.batchSize;
+        cm = new ClassificationModel(s, 2, taps);
+        trainer = cm.getModel().newTrainer(new DefaultTrainingConfig(cm.getLoss()));
+        cm.initializeIfNeeded(trainer, new Shape(1, 3, imageSize, imageSize));
+        NDManager m = trainer.getManager();
+        m.getEngine().setRandomSeed(1);
+        input = m.randomNormal(new Shape(n, 3, imageSize, imageSize));
+        labels = m.randomInteger(0, 2, new Shape(n), DataType.INT64);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        trainer.close();
+        cm.getModel().close();
+    }
+
+    @Benchmark
+    public float forward() {
+        try (NDManager scope = trainer.getManager().newSubManager()) {
+            input.tempAttach(scope);
+            if (taps) cm.armTaps();
+            NDArray out = trainer.evaluate(new NDList(input)).head();
+            cm.disarmTaps();
+            return out.getFloat(0, 0);
+        }
+    }
+
+    @Benchmark
+    public float forwardBackward() {
+        try (NDManager scope = trainer.getManager().newSubManager()) {
+            input.tempAttach(scope);
+            labels.tempAttach(scope);
+            try (GradientCollector gc = trainer.newGradientCollector()) {
+                if (taps) cm.armTaps();
+                NDArray preds = trainer.forward(new NDList(input)).head();
+                cm.disarmTaps();
+                NDArray loss = cm.getLoss().evaluate(new NDList(labels), new NDList(preds));
+                gc.backward(loss);
+                return loss.getFloat();
+            }
+        }
+    }
+}
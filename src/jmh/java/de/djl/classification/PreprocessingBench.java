@@ -0,0 +1,71 @@
+package de.djl.classification;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** {@link Preprocessing#transformAndSave} gesamt und zerlegt in Decode, Resize/Letterbox und JPEG-Encode. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PreprocessingBench {
+
+    /** Typische Rohbildgröße (PetImages) bzw. ein großes Foto. */
+    @Param({"500x375", "1600x1200"})
+    public String source;
+
+    @Param({"128", "224"})
+    public int targetSize;
+
+    private Path dir;
+    private Path src;
+    private Path dst;
+    private BufferedImage decoded;
+    private BufferedImage transformed;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        String[] wh = source.split("x");
+        dir = Files.createTempDirectory("bench-prep");
+        src = Synthetic.writeJpeg(Synthetic.photo(Integer.parseInt(wh[0]), Integer.parseInt(wh[1]), 1), dir.resolve("src.jpg"));
+        dst = dir.resolve("out").resolve("dst.jpg");
+        decoded = Preprocessing.decode(src);
+        transformed = Preprocessing.transform(decoded, targetSize, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Preprocessing.deleteTree(dir);
+    }
+
+    @Benchmark
+    public BufferedImage decode() throws IOException {
+        return Preprocessing.decode(src);
+    }
+
+    @Benchmark
+    public BufferedImage resize() {
+        return Preprocessing.transform(decoded, targetSize, false);
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        ImageIO.write(transformed, "jpg", out);
+        return out.size();
+    }
+
+    @Benchmark
+    public void transformAndSave() throws IOException {
+        Preprocessing.transformAndSave(src, dst, targetSize, false);
+    }
+}
@@ -0,0 +1,49 @@
+package de.djl.classification;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/** Synthetische Eingaben für die Benchmarks – deterministisch und ohne Datensatz auf der Platte. */
+final class Synthetic {
+    private Synthetic() { }
+
+    /** Foto-ähnliches RGB-Bild: weiche Verläufe plus Rauschen, damit JPEG realistisch komprimiert. */
+    static BufferedImage photo(int width, int height, long seed) {
+        Random rnd = new Random(seed);
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        double fx = 2 * Math.PI * (1 + rnd.nextInt(4)) / width, fy = 2 * Math.PI * (1 + rnd.nextInt(4)) / height;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = clamp(128 + 90 * Math.sin(x * fx) + rnd.nextGaussian() * 20);
+                int g = clamp(128 + 90 * Math.cos(y * fy) + rnd.nextGaussian() * 20);
+                int b = clamp(128 + 60 * Math.sin((x + y) * fx) + rnd.nextGaussian() * 20);
+                img.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return img;
+    }
+
+    static Path writeJpeg(BufferedImage img, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        ImageIO.write(img, "jpg", file.toFile());
+        return file;
+    }
+
+    /** ImageFolder-Baum {@code root/<cls>/img_<i>.jpg} mit {@code perClass} Bildern je Klasse. */
+    static Path imageFolder(Path root, int classes, int perClass, int size) throws IOException {
+        for (int c = 0; c < classes; c++) {
+            for (int i = 0; i < perClass; i++) {
+                writeJpeg(photo(size, size, c * 100_000L + i), root.resolve("class" + c).resolve("img_" + i + ".jpg"));
+            }
+        }
+        return root;
+    }
+
+    private static int clamp(double v) {
+        return (int) Math.max(0, Math.min(255, Math.round(v)));
+    }
+}
@@ -4,6 +4,7 @@ import ai.djl.modality.cv.Image;
 import ai.djl.modality.cv.ImageFactory;
 import ai.djl.modality.cv.util.NDImageUtils;
 import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDArrays;
 import ai.djl.ndarray.NDList;
 import ai.djl.ndarray.types.Shape;
 import ai.djl.training.DefaultTrainingConfig;
@@ -11,7 +12,10 @@ import ai.djl.training.Trainer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public class ActivationViewer {
@@ -25,34 +29,81 @@ public class ActivationViewer {
             Path outFile,
             int tileSize) throws Exception {
 
-        try (Trainer trainer = cm.getModel().newTrainer(new DefaultTrainingConfig(cm.getLoss()))) {
+        try (Session session = new Session(cm, imageSize)) {
             System.out.println("Available taps: " + cm.getLastActivationsSnapshot().keySet());
-            trainer.initialize(new Shape(1, 3, imageSize, imageSize));
-
-            Image img = ImageFactory.getInstance().fromFile(imagePath);
-            NDArray x = img.toNDArray(trainer.getManager());
-            x = NDImageUtils.resize(x, imageSize, imageSize);
-            x = NDImageUtils.toTensor(x);
-            x = NDImageUtils.normalize(
-                    x,
-                    new float[]{0.485f, 0.456f, 0.406f},
-                    new float[]{0.229f, 0.224f, 0.225f}
-            );
-            x = x.expandDims(0);
-
-            trainer.forward(new NDList(x));
-            Map<String, NDArray> acts = cm.getLastActivationsSnapshot();
-            NDArray feat = acts.get(layerName);
-            if (feat == null) {
-                throw new IllegalArgumentException("No activation captured for '" + layerName + "'. Available: " + acts.keySet());
+            Map<String, NDArray> acts = session.capture(List.of(ImageFactory.getInstance().fromFile(imagePath)));
+            render(acts, 0, layerName, outFile, tileSize);
+            log.info("Saved activation from image '{}' for layer '{}' -> {}", imagePath.getFileName(), layerName, outFile.toAbsolutePath());
+        }
+    }
+
+    /**
+     * Inferenz-Sitzung für Aktivierungsbilder: ein Trainer pro Modell, alle Bilder in einem Batch-Forward,
+     * alle gewünschten Layer aus derselben Aufnahme.
+     */
+    public static final class Session implements AutoCloseable {
+        private final ClassificationModel cm;
+        private final int imageSize;
+        private final Trainer trainer;
+
+        public Session(ClassificationModel cm, int imageSize) {
+            this.cm = cm;
+            this.imageSize = imageSize;
+            this.trainer = cm.getModel().newTrainer(new DefaultTrainingConfig(cm.getLoss()));
+            cm.initializeIfNeeded(trainer, new Shape(1, 3, imageSize, imageSize));
+        }
+
+        /** Ein Forward (Inferenzmodus) über alle Bilder; Ergebnis: Tap-Name → Aktivierung (N, ...). */
+        public Map<String, NDArray> capture(List<Image> images) {
+            NDList xs = new NDList(images.size());
+            for (Image img : images) {
+                NDArray x = img.toNDArray(trainer.getManager());
+                x = NDImageUtils.resize(x, imageSize, imageSize);
+                x = NDImageUtils.toTensor(x);
+                xs.add(NDImageUtils.normalize(x, CNNPipeline.NORM_MEAN, CNNPipeline.NORM_STD));
             }
-            int dim = feat.getShape().dimension();
-            if (dim >= 3) {
-                ImageUtils.saveFeatureGrid(feat, outFile, tileSize);
-            } else {
-                ImageUtils.saveVectorStripe(feat, outFile, Math.max(32, tileSize / 2));
+            NDArray batch = NDArrays.stack(xs);
+            return cm.captureActivations(trainer, new NDList(batch));
+        }
+
+        /**
+         * Rendert für jedes Bild (Name aus {@code names}) alle {@code layers} nach
+         * {@code outDir/<name>_<layer>.png} – mit genau einem Forward.
+         */
+        public void export(List<Image> images, List<String> names, List<String> layers, Path outDir, int tileSize)
+                throws IOException {
+            Map<String, NDArray> acts = capture(images);
+            for (int i = 0; i < images.size(); i++) {
+                for (String layer : layers) {
+                    Path out = outDir.resolve(names.get(i) + "_" + layer + ".png");
+                    render(acts, i, layer, out, tileSize);
+                    log.info("Saved activation '{}' for layer '{}' -> {}", names.get(i), layer, out.toAbsolutePath());
+                }
             }
-            log.info("Saved activation from image '{}' for layer '{}' -> {} shape={}", imagePath.getFileName(), layerName, outFile.toAbsolutePath(), feat.getShape());
+        }
+
+        @Override
+        public void close() { trainer.close(); }
+    }
+
+    public static List<Image> loadImages(List<Path> paths) throws IOException {
+        List<Image> images = new ArrayList<>(paths.size());
+        for (Path p : paths) images.add(ImageFactory.getInstance().fromFile(p));
+        return images;
+    }
+
+    private static void render(Map<String, NDArray> acts, int index, String layerName, Path outFile, int tileSize)
+            throws IOException {
+        NDArray all = acts.get(layerName);
+        if (all == null) {
+            throw new IllegalArgumentException("No activation captured for '" + layerName + "'. Available: " + acts.keySet());
+        }
+        NDArray feat = all.get(index);
+        int dim = feat.getShape().dimension();
+        if (dim >= 3) {
+            ImageUtils.saveFeatureGrid(feat, outFile, tileSize);
+        } else {
+            ImageUtils.saveVectorStripe(feat, outFile, Math.max(32, tileSize / 2));
         }
     }
 }
@@ -0,0 +1,197 @@
+package de.djl.classification;
+
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.util.NDImageUtils;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDArrays;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.index.NDIndex;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.translate.Batchifier;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Stapelt die Samples wie {@link Batchifier#STACK} und augmentiert danach den ganzen Batch (N,C,H,W) mit
+ * NDArray-Operationen: zufälliger Ausschnitt mit Rückskalierung, horizontales Spiegeln und Farb-Jitter
+ * (Helligkeit, Kontrast, Sättigung), jeweils pro Sample; mit {@code cropPerBatch} ein Ausschnitt für den ganzen
+ * Batch. Als {@code optDataBatchifier} läuft das auf den Prefetch-Threads des Datasets, nicht im Trainings-Thread.
+ * <p>
+ * Die Zufallswerte eines Samples kommen aus {@code seed}, einem Fingerabdruck seines Inhalts und der Epoche
+ * (siehe {@link #setEpoch}) – unabhängig davon, welcher Loader-Thread den Batch baut und mit welchen anderen
+ * Samples es gestapelt wird, und nach {@code --resume} wieder dieselben wie im ursprünglichen Lauf.
+ */
+public class AugmentingBatchifier implements Batchifier {
+    private static final long serialVersionUID = 1L;
+
+    private final Settings.Augmentation aug;
+    private final long seed;
+    private final float[] mean;
+    private final float[] std;
+    private volatile int epoch;
+
+    /** {@code mean}/{@code std}: Normalisierung, mit der die Samples ankommen (für den Farb-Jitter). */
+    public AugmentingBatchifier(Settings.Augmentation aug, long seed, float[] mean, float[] std) {
+        this.aug = aug;
+        this.seed = seed;
+        this.mean = mean.clone();
+        this.std = std.clone();
+    }
+
+    /** Epoche der folgenden Batches; {@code ClassificationModel#fit} setzt sie vor jeder Epoche. */
+    public void setEpoch(int epoch) {
+        this.epoch = epoch;
+    }
+
+    @Override
+    public NDList batchify(NDList[] inputs) {
+        NDList stacked = STACK.batchify(inputs);
+        NDArray data = stacked.get(0);
+        NDManager parent = data.getManager();
+        NDArray out;
+        try (NDManager tmp = parent.newSubManager()) {
+            data.tempAttach(tmp);
+            out = augment(data, randoms(data));
+            out.attach(parent);
+        }
+        stacked.set(0, out);
+        return stacked;
+    }
+
+    @Override
+    public NDList[] unbatchify(NDList inputs) {
+        return STACK.unbatchify(inputs);
+    }
+
+    @Override
+    public NDList[] split(NDList list, int numOfSlices, boolean evenSplit) {
+        return STACK.split(list, numOfSlices, evenSplit);
+    }
+
+    /** Ein Generator pro Sample, abgeleitet aus dessen mittlerer Zeile des ersten Kanals und der Epoche. */
+    private SplittableRandom[] randoms(NDArray data) {
+        int n = (int) data.getShape().get(0);
+        long h = data.getShape().get(2) / 2;
+        float[] rows = data.get(new NDIndex(":, 0, {}, :", h)).toFloatArray();
+        int w = rows.length / n;
+        long e = (long) epoch << 32;
+        SplittableRandom[] rnd = new SplittableRandom[n];
+        for (int i = 0; i < n; i++) {
+            long fingerprint = Arrays.hashCode(Arrays.copyOfRange(rows, i * w, (i + 1) * w)) * 31L + w;
+            rnd[i] = new SplittableRandom(seed ^ (fingerprint * 0x9E3779B97F4A7C15L) ^ e);
+        }
+        return rnd;
+    }
+
+    private NDArray augment(NDArray x, SplittableRandom[] rnd) {
+        Shape shape = x.getShape();
+        int n = (int) shape.get(0), c = (int) shape.get(1), h = (int) shape.get(2), w = (int) shape.get(3);
+        NDManager m = x.getManager();
+
+        if (aug.cropScaleMin < 1.0) {
+            if (aug.cropPerBatch) {
+                int[] b = cropBox(rnd[0], h, w);
+                if (b != null) {
+                    x = resizedCrop(x.get(new NDIndex(":, :, {}:{}, {}:{}", b[0], b[0] + b[2], b[1], b[1] + b[3])), h, w);
+                }
+            } else {
+                int[][] boxes = new int[n][];
+                boolean any = false;
+                for (int i = 0; i < n; i++) any |= (boxes[i] = cropBox(rnd[i], h, w)) != null;
+                if (any) x = resizedCrops(x, boxes);
+            }
+        }
+
+        if (aug.flipProbability > 0) {
+            boolean[] flip = new boolean[n];
+            boolean any = false;
+            for (int i = 0; i < n; i++) any |= flip[i] = rnd[i].nextDouble() < aug.flipProbability;
+            if (any) x = NDArrays.where(m.create(flip, new Shape(n, 1, 1, 1)), x.flip(3), x);
+        }
+
+        boolean jitter = aug.brightness > 0 || aug.contrast > 0 || aug.saturation > 0;
+        if (jitter && c == mean.length) {
+            NDArray mu = m.create(mean, new Shape(1, c, 1, 1));
+            NDArray sigma = m.create(std, new Shape(1, c, 1, 1));
+            NDArray img = x.mul(sigma).add(mu);
+            if (aug.brightness > 0) img = img.mul(factors(m, rnd, aug.brightness));
+            if (aug.contrast > 0) {
+                NDArray gray = img.mean(new int[]{1, 2, 3}, true);
+                img = img.sub(gray).mul(factors(m, rnd, aug.contrast)).add(gray);
+            }
+            if (aug.saturation > 0 && c == 3) {
+                NDArray luma = img.mul(m.create(new float[]{0.299f, 0.587f, 0.114f}, new Shape(1, 3, 1, 1)))
+                        .sum(new int[]{1}, true);
+                img = img.sub(luma).mul(factors(m, rnd, aug.saturation)).add(luma);
+            }
+            x = img.clip(0f, 1f).sub(mu).div(sigma);
+        }
+        return x.toType(DataType.FLOAT32, false);
+    }
+
+    /** Zufälliger Ausschnitt {y0, x0, Höhe, Breite} nach Fläche und Seitenverhältnis; {@code null} = ganzes Bild. */
+    private int[] cropBox(SplittableRandom rnd, int h, int w) {
+        double area = aug.cropScaleMin + rnd.nextDouble() * (1.0 - aug.cropScaleMin);
+        double ratio = Math.exp(Math.log(3.0 / 4) + rnd.nextDouble() * Math.log(16.0 / 9));
+        int cw = (int) Math.min(w, Math.round(Math.sqrt(area * ratio) * w));
+        int ch = (int) Math.min(h, Math.round(Math.sqrt(area / ratio) * h));
+        if (cw >= w && ch >= h) return null;
+        return new int[]{rnd.nextInt(h - ch + 1), rnd.nextInt(w - cw + 1), ch, cw};
+    }
+
+    /** Skaliert einen (N,C,h,w)-Ausschnitt bilinear zurück auf (N,C,H,W); NDImageUtils.resize erwartet NHWC. */
+    private static NDArray resizedCrop(NDArray crop, int h, int w) {
+        return NDImageUtils.resize(crop.transpose(0, 2, 3, 1), w, h, Image.Interpolation.BILINEAR).transpose(0, 3, 1, 2);
+    }
+
+    /**
+     * Ausschnitt und bilineare Rückskalierung aller Samples in einem Schritt: pro Sample je eine
+     * Interpolationsmatrix für Zeilen (H×H) und Spalten (W×W), in die der Ausschnitt eingerechnet ist, dann
+     * {@code Ry · x · Rxᵀ} als zwei gebatchte matMuls über (N,C,H,W). Gleiche Stützstellen wie
+     * {@link #resizedCrop} (Pixelmitten, Rand geklemmt); {@code null}-Boxen ergeben die Identität.
+     */
+    private static NDArray resizedCrops(NDArray x, int[][] boxes) {
+        Shape shape = x.getShape();
+        int n = (int) shape.get(0), h = (int) shape.get(2), w = (int) shape.get(3);
+        float[] ry = new float[n * h * h];
+        float[] rxT = new float[n * w * w];
+        for (int i = 0; i < n; i++) {
+            int[] b = boxes[i] != null ? boxes[i] : new int[]{0, 0, h, w};
+            for (int d = 0; d < h; d++) {
+                // Zeile d von Ry: Gewichte über die Quellzeilen
+                interpolate(ry, i * h * h + d * h, 1, b[0], b[2], h, d);
+            }
+            for (int d = 0; d < w; d++) {
+                // Spalte d von Rxᵀ: Gewichte über die Quellspalten
+                interpolate(rxT, i * w * w + d, w, b[1], b[3], w, d);
+            }
+        }
+        NDManager m = x.getManager();
+        NDArray rows = m.create(ry, new Shape(n, 1, h, h)).toType(x.getDataType(), false);
+        NDArray cols = m.create(rxT, new Shape(n, 1, w, w)).toType(x.getDataType(), false);
+        return rows.matMul(x).matMul(cols);
+    }
+
+    /**
+     * Bilineare Gewichte für Zielposition {@code d} von {@code size}, wenn {@code len} Quellpixel ab {@code start}
+     * auf {@code size} skaliert werden; schreibt nach {@code out[base + src·stride]}.
+     */
+    private static void interpolate(float[] out, int base, int stride, int start, int len, int size, int d) {
+        double src = Math.min(Math.max((d + 0.5) * len / size - 0.5, 0), len - 1);
+        int i0 = (int) src;
+        int i1 = Math.min(i0 + 1, len - 1);
+        float f = (float) (src - i0);
+        out[base + (start + i0) * stride] += 1 - f;
+        out[base + (start + i1) * stride] += f;
+    }
+
+    /** Faktoren aus [1 - s, 1 + s] pro Sample, als (N,1,1,1) zum Broadcasten. */
+    private static NDArray factors(NDManager m, SplittableRandom[] rnd, double strength) {
+        float[] f = new float[rnd.length];
+        for (int i = 0; i < rnd.length; i++) f[i] = (float) (1.0 + (rnd[i].nextDouble() * 2 - 1) * strength);
+        return m.create(f, new Shape(rnd.length, 1, 1, 1));
+    }
+}
@@ -17,6 +17,7 @@ import ai.djl.repository.zoo.ModelNotFoundException;
 import ai.djl.repository.zoo.ModelZoo;
 import ai.djl.repository.zoo.ZooModel;
 import ai.djl.training.dataset.RandomAccessDataset;
+import ai.djl.translate.Batchifier;
 import ai.djl.translate.TranslateException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,8 +26,6 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -35,6 +34,9 @@ import java.util.stream.Collectors;
 public class CNNPipeline {
     private static final Logger log = LoggerFactory.getLogger(CNNPipeline.class);
 
+    public static final float[] NORM_MEAN = {0.485f, 0.456f, 0.406f};
+    public static final float[] NORM_STD  = {0.229f, 0.224f, 0.225f};
+
     public static void main(String[] argv) throws Exception {
         String cfgRes = "runconfig.json";
         for (int i=0; i<argv.length; i++) {
@@ -42,6 +44,9 @@ public class CNNPipeline {
         }
         PipelineConfig cfg = PipelineConfig.loadFromResources(cfgRes);
         cfg.applyOverrides(argv);
+        // Vor der ersten Engine-Nutzung: explizite Werte zuerst, der Tuner füllt nur noch Ungesetztes auf.
+        configureEngineThreads(cfg.intraOpThreads, cfg.interOpThreads);
+        if (cfg.threadTuning && cfg.distWorld <= 1) ThreadTuner.apply(cfg, argv);
 
         if (cfg.zoo) runZoo(cfg); else run(cfg);
     }
@@ -50,33 +55,169 @@ public class CNNPipeline {
         Settings settings = Settings.loadFromResources(cfg.settingsJson);
         Settings.Setting setting = settings.get(cfg.setting);
         log.info("Using setting: {}", setting);
+        if (cfg.distWorld > 1) {
+            runDistributed(cfg, setting);
+            return;
+        }
+
+        var pp = prepare(cfg);
+        List<String> classes = classesOf(pp);
+        log.info("Classes: {}", classes);
+        prepareShards(cfg, pp, classes);
+
+        train(cfg, setting, pp, classes, true);
+    }
+
+    /**
+     * Ein Rank eines datenparallelen Laufs (siehe {@link DistributedLauncher}). Nur Rank 0 bereitet das Dataset
+     * vor und schreibt Modell, Plots und Checkpoints; die anderen Ranks bekommen den Dataset-Pfad von Rank 0
+     * (gemeinsames Dateisystem bzw. identischer Pfad auf jedem Knoten vorausgesetzt).
+     */
+    static void runDistributed(PipelineConfig cfg, Settings.Setting setting) throws Exception {
+        int rank = cfg.distRank, world = cfg.distWorld;
+        try (GradientSync sync = GradientSync.connect(rank, world, cfg.distMaster, cfg.distPort,
+                cfg.distTimeoutSeconds * 1000L)) {
+            Preprocessing.PreparedPaths pp = null;
+            if (rank == 0) {
+                pp = prepare(cfg);
+                prepareShards(cfg, pp, classesOf(pp));
+            }
+            Path outRoot = Paths.get(sync.broadcast(rank == 0 ? pp.outRoot().toString() : null));
+            if (pp == null) {
+                pp = new Preprocessing.PreparedPaths(outRoot, outRoot.resolve("train"), outRoot.resolve("val"),
+                        outRoot.resolve("metadata.json"));
+            }
+            List<String> classes = classesOf(pp);
 
-        String run = DateTimeFormatter.ofPattern("yyyyMMdd-HHmm").format(LocalDateTime.now());
-        var pp = Preprocessing.prepareDatasets(
+            Datasets ds = shard(datasets(cfg, setting, pp), rank, world);
+            log.info("Rank {}/{}: {} train / {} val samples", rank, world, ds.train().size(), ds.val().size());
+            if (rank > 0) {
+                // Nur Rank 0 schreibt Checkpoints; die anderen laden beim Resume nur mit.
+                cfg.checkpointEveryEpochs = 0;
+                cfg.checkpointEveryMinutes = 0;
+            }
+            ClassificationModel cm = newModel(cfg, setting, classes.size(), rank == 0);
+            cm.setGradientSync(sync);
+            cm.setAugmentation(ds.augment());
+            ClassificationModel.History hist = cm.fit(ds.train(), ds.val(), cfg.epochs, cfg.imageSize, 3);
+            if (rank == 0) finish(cfg, setting, cm, hist, classes);
+        }
+    }
+
+    /**
+     * Deterministischer Anteil eines Ranks: jedes {@code world}-te Beispiel ab Index {@code rank}. Der Train-Split
+     * wird auf gleiche Länge gekürzt, damit alle Ranks gleich viele Schritte (und damit All-Reduces) machen.
+     */
+    static Datasets shard(Datasets ds, int rank, int world) {
+        long perRank = ds.train().size() / world;
+        List<Long> train = new ArrayList<>();
+        for (long i = 0; i < perRank; i++) train.add(i * world + rank);
+        List<Long> val = new ArrayList<>();
+        for (long i = rank; i < ds.val().size(); i += world) val.add(i);
+        return new Datasets(ds.train().subDataset(train), ds.val().subDataset(val), ds.augment());
+    }
+
+    static Preprocessing.PreparedPaths prepare(PipelineConfig cfg) throws IOException {
+        return Preprocessing.prepareDatasets(
                 Paths.get(cfg.raw),
                 Paths.get(cfg.datasetsRoot),
                 cfg.valSplit,
                 cfg.seed,
-                run,
+                cfg.datasetRunName(""),
                 cfg.imageSize,
-                cfg.grayscale
+                cfg.grayscale,
+                cfg.preprocessWorkers,
+                cfg.cacheRoot(),
+                cfg.preprocessCacheMaxAgeDays
         );
+    }
 
-        List<String> classes;
+    static List<String> classesOf(Preprocessing.PreparedPaths pp) throws IOException {
         try (var stream = Files.list(pp.trainRoot())) {
-            classes = stream.filter(Files::isDirectory)
+            return stream.filter(Files::isDirectory)
                     .map(p -> p.getFileName().toString())
                     .sorted()
                     .toList();
         }
-        log.info("Classes: {}", classes);
+    }
+
+    /** Schreibt (falls nötig) die Tensor-Shards beider Splits; muss vor parallelen Trainingsjobs laufen. */
+    static void prepareShards(PipelineConfig cfg, Preprocessing.PreparedPaths pp, List<String> classes) throws IOException {
+        if (!cfg.tensorShards) return;
+        Path shardRoot = pp.outRoot().resolve("shards");
+        TensorShards.ensure(pp.trainRoot(), shardRoot.resolve("train"), classes, cfg.imageSize, NORM_MEAN, NORM_STD);
+        TensorShards.ensure(pp.valRoot(),   shardRoot.resolve("val"),   classes, cfg.imageSize, NORM_MEAN, NORM_STD);
+    }
 
-        RandomAccessDataset train = buildImageFolder(pp.trainRoot(), cfg.imageSize, setting.batchSize, cfg.shuffleTrain);
-        RandomAccessDataset val   = buildImageFolder(pp.valRoot(),   cfg.imageSize, setting.batchSize, false);
+    /** Train- und Val-Dataset eines Settings (Batchgröße kommt aus dem Setting) und ggf. die Augmentierung von {@code train}. */
+    record Datasets(RandomAccessDataset train, RandomAccessDataset val, AugmentingBatchifier augment) { }
+
+    /**
+     * Trainiert ein Setting auf einem vorbereiteten Dataset und schreibt Modell, Plots und (optional)
+     * Aktivierungen. Thread-sicher für parallele Jobs, solange {@link #prepareShards} vorher lief.
+     */
+    static ClassificationModel.History train(PipelineConfig cfg, Settings.Setting setting,
+                                             Preprocessing.PreparedPaths pp, List<String> classes,
+                                             boolean progress) throws Exception {
+        Datasets ds = datasets(cfg, setting, pp);
+        ClassificationModel cm = newModel(cfg, setting, classes.size(), progress);
+        cm.setAugmentation(ds.augment());
+        ClassificationModel.History hist = cm.fit(ds.train(), ds.val(), cfg.epochs, cfg.imageSize, 3);
+        finish(cfg, setting, cm, hist, classes);
+        return hist;
+    }
 
-        ClassificationModel cm = new ClassificationModel(setting, classes.size(), cfg.saveActivations);
-        ClassificationModel.History hist = cm.fit(train, val, cfg.epochs, cfg.imageSize, 3);
+    static Datasets datasets(PipelineConfig cfg, Settings.Setting setting, Preprocessing.PreparedPaths pp) throws Exception {
+        AugmentingBatchifier augment = augmentation(cfg, setting);
+        if (cfg.tensorShards) {
+            Path shardRoot = pp.outRoot().resolve("shards");
+            return new Datasets(
+                    buildShardDataset(shardRoot.resolve("train"), setting.batchSize, cfg.shuffleTrain, cfg.prefetchDepth, augment),
+                    buildShardDataset(shardRoot.resolve("val"),   setting.batchSize, false, cfg.prefetchDepth, null),
+                    augment);
+        }
+        return new Datasets(
+                buildImageFolder(pp.trainRoot(), cfg.imageSize, setting.batchSize, cfg.shuffleTrain, cfg.prefetchDepth, augment),
+                buildImageFolder(pp.valRoot(),   cfg.imageSize, setting.batchSize, false, cfg.prefetchDepth, null),
+                augment);
+    }
+
+    /** Batch-Augmentierung des Train-Splits oder {@code null}, wenn das Setting keine vorsieht. */
+    static AugmentingBatchifier augmentation(PipelineConfig cfg, Settings.Setting setting) {
+        Settings.Augmentation aug = setting.augmentation;
+        if (aug == null) return null;
+        return new AugmentingBatchifier(aug, aug.seed != null ? aug.seed : cfg.seed, NORM_MEAN, NORM_STD);
+    }
 
+    static ClassificationModel newModel(PipelineConfig cfg, Settings.Setting setting, int numClasses, boolean progress)
+            throws IOException {
+        ClassificationModel cm = new ClassificationModel(setting, numClasses, cfg.saveActivations);
+        cm.setDataLoading(cfg.loaderWorkers);
+        cm.setShuffle(cfg.shuffleTrain);
+        cm.setTapSchedule(cfg.tapEverySteps, cfg.tapSamples);
+        cm.setProgress(progress);
+        cm.setPrecision(MixedPrecision.parse(cfg.precision));
+        if (cfg.instrument) {
+            int rank = cfg.distRank;
+            Path jsonl = Paths.get("output/metrics", setting.name, rank > 0 ? "training-rank" + rank + ".jsonl" : "training.jsonl");
+            cm.setInstrumentation(new TrainingInstrumentation(jsonl, cfg.metricsPort > 0 ? cfg.metricsPort + rank : 0, setting.name));
+        }
+        if (cfg.earlyStopPatience > 0) {
+            cm.setScheduler(new EarlyStopping(cfg.earlyStopMonitor, cfg.earlyStopPatience, cfg.earlyStopMinDelta));
+        }
+        if (cfg.checkpointing()) {
+            Path root = Paths.get(cfg.checkpointDir).resolve(setting.name);
+            Path resume = Checkpointer.resolve(root, cfg.resume);
+            if (cfg.resume != null && resume == null) log.info("No checkpoint under {}, starting fresh", root);
+            cm.setCheckpointing(new Checkpointer(root, cfg.checkpointEveryEpochs, cfg.checkpointEveryMinutes,
+                    cfg.checkpointKeep, cfg.seed), resume);
+        }
+        return cm;
+    }
+
+    /** Speichert Modell, Aktivierungen und Plots eines fertig trainierten Settings. */
+    static void finish(PipelineConfig cfg, Settings.Setting setting, ClassificationModel cm,
+                       ClassificationModel.History hist, List<String> classes) throws IOException {
         Path modelOut = Paths.get("output/models");
         cm.save(modelOut, classes);
 
@@ -98,27 +239,34 @@ public class CNNPipeline {
 
         Path metricsDir = Paths.get("output/metrics/" + setting.name);
         Plotter.saveLossAcc(hist.trainLoss, hist.valLoss, hist.trainAcc, hist.valAcc, metricsDir, "training");
-        if (classes.size()==2) {
-            ImageUtils.saveConfusionMatrix2x2(hist.confusion2x2, new String[]{"Cat","Dog"}, metricsDir.resolve("confusion.png"));
+        if (hist.confusion.length > 0) {
+            ImageUtils.saveConfusionMatrix(hist.confusion, classes, metricsDir.resolve("confusion.png"));
+            List<ClassMetrics.PerClass> perClass = ClassMetrics.of(hist.confusion, classes);
+            ClassMetrics.writeCsv(perClass, metricsDir.resolve("per_class.csv"));
+            String topK = hist.valTopK.isEmpty() ? "" : String.format(Locale.ROOT, " top-%d=%.4f",
+                    ClassificationModel.TOP_K, hist.valTopK.get(hist.valTopK.size() - 1));
+            log.info("[{}] val macro-F1={}{}", setting.name,
+                    String.format(Locale.ROOT, "%.4f", ClassMetrics.macroF1(perClass)), topK);
         }
         log.info("Done. See: {}", metricsDir.toAbsolutePath());
     }
 
+    /**
+     * Setzt die PyTorch-Threadpools (intra-op / inter-op). Wirkt nur, solange die Engine noch nicht
+     * initialisiert ist – also vor dem ersten NDManager/Model aufrufen. Werte {@code <= 0} bleiben unverändert.
+     */
+    static void configureEngineThreads(int intraOp, int interOp) {
+        if (intraOp > 0) System.setProperty("ai.djl.pytorch.num_threads", String.valueOf(intraOp));
+        if (interOp > 0) System.setProperty("ai.djl.pytorch.num_interop_threads", String.valueOf(interOp));
+    }
+
     public static void runZoo(PipelineConfig cfg) throws IOException, TranslateException {
+        if (cfg.zooInput != null) {
+            ZooBatchInference.run(cfg);
+            return;
+        }
         String backbone = cfg.zooBackbone == null ? "resnet18" : cfg.zooBackbone.toLowerCase(Locale.ROOT);
-        String layers = switch (backbone) {
-            case "resnet34" -> "34";
-            case "resnet50" -> "50";
-            case "resnet101" -> "101";
-            default -> "18";
-        };
-
-        Criteria<Image, Classifications> criteria = Criteria.builder()
-                .optApplication(Application.CV.IMAGE_CLASSIFICATION)
-                .setTypes(Image.class, Classifications.class)
-                .optEngine("PyTorch")
-                .optFilter("layers", layers)
-                .build();
+        Criteria<Image, Classifications> criteria = zooCriteria(cfg);
 
         List<Path> samples = pickSampleImages(Paths.get(cfg.raw));
         Path outDir = Paths.get("output/zoo/" + backbone);
@@ -142,6 +290,23 @@ public class CNNPipeline {
         log.info("Zoo demo outputs at {}", outDir.toAbsolutePath());
     }
 
+    static Criteria<Image, Classifications> zooCriteria(PipelineConfig cfg) {
+        String backbone = cfg.zooBackbone == null ? "resnet18" : cfg.zooBackbone.toLowerCase(Locale.ROOT);
+        String layers = switch (backbone) {
+            case "resnet34" -> "34";
+            case "resnet50" -> "50";
+            case "resnet101" -> "101";
+            default -> "18";
+        };
+
+        return Criteria.builder()
+                .optApplication(Application.CV.IMAGE_CLASSIFICATION)
+                .setTypes(Image.class, Classifications.class)
+                .optEngine("PyTorch")
+                .optFilter("layers", layers)
+                .build();
+    }
+
     private static List<Path> pickSampleImages(Path rawRoot) throws IOException {
         List<Path> imgs = new ArrayList<>();
         if (!Files.isDirectory(rawRoot)) return imgs;
@@ -161,17 +326,33 @@ public class CNNPipeline {
         return imgs.stream().limit(8).collect(Collectors.toList());
     }
 
-    private static RandomAccessDataset buildImageFolder(Path root, int imageSize, int batch, boolean shuffle) throws Exception {
-        ImageFolder dataset = ImageFolder.builder()
+    static RandomAccessDataset buildImageFolder(Path root, int imageSize, int batch, boolean shuffle, int prefetch) throws Exception {
+        return buildImageFolder(root, imageSize, batch, shuffle, prefetch, null);
+    }
+
+    /** {@code augment}: optionaler Batchifier, der auf den Prefetch-Threads ganze Batches augmentiert. */
+    static RandomAccessDataset buildImageFolder(Path root, int imageSize, int batch, boolean shuffle, int prefetch,
+                                                Batchifier augment) throws Exception {
+        ImageFolder.Builder builder = ImageFolder.builder()
                 .setRepositoryPath(root)
                 .addTransform(new Resize(imageSize, imageSize))
                 .addTransform(new ToTensor())
-                .addTransform(new Normalize(
-                        new float[]{0.485f, 0.456f, 0.406f},
-                        new float[]{0.229f, 0.224f, 0.225f}))
+                .addTransform(new Normalize(NORM_MEAN, NORM_STD))
                 .setSampling(batch, shuffle)
-                .build();
+                .optPrefetchNumber(prefetch);
+        if (augment != null) builder.optDataBatchifier(augment);
+        ImageFolder dataset = builder.build();
         dataset.prepare();
         return dataset;
     }
+
+    private static RandomAccessDataset buildShardDataset(Path shardDir, int batch, boolean shuffle, int prefetch,
+                                                         Batchifier augment) throws IOException {
+        ShardDataset.Builder builder = ShardDataset.builder()
+                .setDirectory(shardDir)
+                .setSampling(batch, shuffle)
+                .optPrefetchNumber(prefetch);
+        if (augment != null) builder.optDataBatchifier(augment);
+        return builder.build();
+    }
 }
@@ -0,0 +1,193 @@
+package de.djl.classification;
+
+import ai.djl.nn.Block;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Periodische Checkpoints unter {@code <root>/ckpt-eEEEE-bBBBBBB/} mit {@code params.bin} (Block-Parameter),
+ * {@code optimizer.bin} (Momente), {@code state.json} (Cursor, Seed, Schrittzähler, History).
+ * Der Trainings-Thread serialisiert nur in den Speicher; Schreiben und Aufräumen (die letzten
+ * {@code keep} plus der beste nach Val-Accuracy) laufen auf einem Hintergrund-Thread.
+ */
+public class Checkpointer {
+    private static final Logger log = LoggerFactory.getLogger(Checkpointer.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String PREFIX = "ckpt-";
+
+    /** Inhalt von {@code state.json}. */
+    public static class State {
+        /** Epoche, in der fortgesetzt wird (0-basiert). */
+        public int epoch;
+        /** Bereits trainierte Batches dieser Epoche (0 = Epochengrenze). */
+        public int batch;
+        public long step;
+        public long seed;
+        /** Val-Accuracy der zuletzt abgeschlossenen Epoche; null bei Checkpoints mitten in der Epoche. */
+        public Double valAcc;
+        public Map<String, Integer> optimizerSteps = new HashMap<>();
+        /** Laufende Trainingssummen der angefangenen Epoche. */
+        public double partialLossSum;
+        public long partialCorrect;
+        public long partialCount;
+        public ClassificationModel.History history;
+    }
+
+    /** Ein von der Platte gelesener Checkpoint. */
+    public record Loaded(Path dir, State state, byte[] params, byte[] optimizer) { }
+
+    private final Path root;
+    private final int everyEpochs;
+    private final long everyNanos;
+    private final int keep;
+    private final long seed;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "checkpoint-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private Future<?> pending;
+    private long lastSave = System.nanoTime();
+
+    /**
+     * @param everyEpochs  Checkpoint nach jeder N-ten Epoche (0 = aus)
+     * @param everyMinutes zusätzlich spätestens alle M Minuten, auch mitten in der Epoche (0 = aus)
+     * @param keep         Anzahl der jüngsten Checkpoints, die erhalten bleiben (der beste bleibt immer)
+     */
+    public Checkpointer(Path root, int everyEpochs, double everyMinutes, int keep, long seed) {
+        this.root = root;
+        this.everyEpochs = Math.max(0, everyEpochs);
+        this.everyNanos = everyMinutes > 0 ? (long) (everyMinutes * 60e9) : 0;
+        this.keep = Math.max(1, keep);
+        this.seed = seed;
+    }
+
+    public long seed() { return seed; }
+
+    /** Nach jeder N-ten Epoche; bei aktiven Checkpoints außerdem nach der letzten. */
+    boolean dueAfterEpoch(int completedEpochs, int totalEpochs) {
+        if (everyEpochs > 0 && completedEpochs % everyEpochs == 0) return true;
+        return (everyEpochs > 0 || everyNanos > 0) && completedEpochs == totalEpochs;
+    }
+
+    boolean dueByTime() {
+        return everyNanos > 0 && System.nanoTime() - lastSave >= everyNanos;
+    }
+
+    /**
+     * Serialisiert Parameter, Optimizer-Zustand und {@code state} auf dem aufrufenden (Trainings-)Thread und
+     * übergibt das Schreiben an den Hintergrund-Thread. Ein noch laufender Schreibvorgang wird vorher abgewartet,
+     * damit höchstens ein Snapshot im Speicher liegt.
+     */
+    void save(Block block, byte[] optimizer, State state) throws IOException {
+        awaitWrites();
+        ByteArrayOutputStream params = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(params)) {
+            block.saveParameters(dos);
+        }
+        byte[] json = MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(state);
+        String name = String.format("%se%04d-b%06d", PREFIX, state.epoch, state.batch);
+        byte[] paramBytes = params.toByteArray();
+        lastSave = System.nanoTime();
+        pending = writer.submit(() -> {
+            try {
+                write(name, paramBytes, optimizer, json);
+                rotate();
+            } catch (IOException e) {
+                log.error("Writing checkpoint {} failed: {}", name, e.toString());
+            }
+        });
+    }
+
+    /** Wartet, bis der letzte Checkpoint vollständig auf der Platte liegt. */
+    void awaitWrites() {
+        Future<?> f = pending;
+        if (f == null) return;
+        try {
+            f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Checkpoint writer failed: {}", e.getCause().toString());
+        }
+    }
+
+    private void write(String name, byte[] params, byte[] optimizer, byte[] state) throws IOException {
+        Files.createDirectories(root);
+        Path tmp = root.resolve("." + name + ".tmp");
+        Preprocessing.deleteTree(tmp);
+        Files.createDirectories(tmp);
+        Files.write(tmp.resolve("params.bin"), params);
+        Files.write(tmp.resolve("optimizer.bin"), optimizer);
+        Files.write(tmp.resolve("state.json"), state);
+        Path dst = root.resolve(name);
+        Preprocessing.deleteTree(dst);
+        Files.move(tmp, dst, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Checkpoint -> {}", dst.toAbsolutePath());
+    }
+
+    /** Behält die {@code keep} jüngsten Checkpoints und den mit der besten Val-Accuracy. */
+    private void rotate() throws IOException {
+        List<Path> all = list(root);
+        if (all.size() <= keep) return;
+        Path best = null;
+        double bestAcc = Double.NEGATIVE_INFINITY;
+        for (Path p : all) {
+            Double acc = MAPPER.readValue(p.resolve("state.json").toFile(), State.class).valAcc;
+            if (acc != null && acc > bestAcc) {
+                bestAcc = acc;
+                best = p;
+            }
+        }
+        for (Path p : all.subList(0, all.size() - keep)) {
+            if (!p.equals(best)) Preprocessing.deleteTree(p);
+        }
+    }
+
+    /** Vollständige Checkpoints unter {@code root}, älteste zuerst. */
+    static List<Path> list(Path root) throws IOException {
+        if (!Files.isDirectory(root)) return List.of();
+        try (var s = Files.list(root)) {
+            List<Path> out = new ArrayList<>(s.filter(Files::isDirectory)
+                    .filter(p -> p.getFileName().toString().startsWith(PREFIX))
+                    .filter(p -> Files.isRegularFile(p.resolve("state.json")))
+                    .toList());
+            out.sort(Comparator.comparing(p -> p.getFileName().toString()));
+            return out;
+        }
+    }
+
+    /**
+     * Löst {@code --resume} auf: {@code latest} = jüngster Checkpoint unter {@code root} (null, wenn es keinen gibt),
+     * sonst ein konkretes Checkpoint-Verzeichnis.
+     */
+    static Path resolve(Path root, String resume) throws IOException {
+        if (resume == null || resume.isBlank()) return null;
+        if (!"latest".equalsIgnoreCase(resume)) return Path.of(resume);
+        List<Path> all = list(root);
+        return all.isEmpty() ? null : all.get(all.size() - 1);
+    }
+
+    static Loaded load(Path dir) throws IOException {
+        State state = MAPPER.readValue(dir.resolve("state.json").toFile(), State.class);
+        return new Loaded(dir, state, Files.readAllBytes(dir.resolve("params.bin")),
+                Files.readAllBytes(dir.resolve("optimizer.bin")));
+    }
+}
@@ -0,0 +1,49 @@
+package de.djl.classification;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/** Precision/Recall/F1 pro Klasse aus einer Konfusionsmatrix (Zeile = wahre Klasse, Spalte = Vorhersage). */
+public final class ClassMetrics {
+
+    public record PerClass(String label, long support, long predicted, double precision, double recall, double f1) { }
+
+    private ClassMetrics() { }
+
+    public static List<PerClass> of(int[][] cm, List<String> labels) {
+        int n = cm.length;
+        long[] predicted = new long[n];
+        for (int[] row : cm) for (int c = 0; c < n; c++) predicted[c] += row[c];
+        List<PerClass> out = new ArrayList<>(n);
+        for (int k = 0; k < n; k++) {
+            long support = 0;
+            for (int v : cm[k]) support += v;
+            long tp = cm[k][k];
+            double precision = predicted[k] == 0 ? 0.0 : (double) tp / predicted[k];
+            double recall = support == 0 ? 0.0 : (double) tp / support;
+            double f1 = precision + recall == 0 ? 0.0 : 2 * precision * recall / (precision + recall);
+            out.add(new PerClass(k < labels.size() ? labels.get(k) : String.valueOf(k), support, predicted[k],
+                    precision, recall, f1));
+        }
+        return out;
+    }
+
+    /** Ungewichtetes Mittel des F1 über die Klassen mit Beispielen im Val-Split. */
+    public static double macroF1(List<PerClass> classes) {
+        return classes.stream().filter(c -> c.support() > 0).mapToDouble(PerClass::f1).average().orElse(0.0);
+    }
+
+    public static void writeCsv(List<PerClass> classes, Path outFile) throws IOException {
+        StringBuilder sb = new StringBuilder("class,support,predicted,precision,recall,f1\n");
+        for (PerClass c : classes) {
+            sb.append(String.format(Locale.ROOT, "%s,%d,%d,%.4f,%.4f,%.4f%n",
+                    c.label().replace(",", " "), c.support(), c.predicted(), c.precision(), c.recall(), c.f1()));
+        }
+        Files.createDirectories(outFile.getParent());
+        Files.writeString(outFile, sb);
+    }
+}
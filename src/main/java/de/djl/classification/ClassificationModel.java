@@ -1,15 +1,19 @@
 package de.djl.classification;
 
+import ai.djl.MalformedModelException;
 import ai.djl.Model;
+import ai.djl.ndarray.BaseNDManager;
 import ai.djl.ndarray.NDArray;
 import ai.djl.ndarray.NDList;
 import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.index.NDIndex;
 import ai.djl.ndarray.types.DataType;
 import ai.djl.ndarray.types.Shape;
 import ai.djl.nn.Activation;
 import ai.djl.nn.Block;
 import ai.djl.nn.Blocks;
 import ai.djl.nn.LambdaBlock;
+import ai.djl.nn.Parameter;
 import ai.djl.nn.SequentialBlock;
 import ai.djl.nn.convolutional.Conv2d;
 import ai.djl.nn.core.Linear;
@@ -20,39 +24,68 @@ import ai.djl.training.DefaultTrainingConfig;
 import ai.djl.training.GradientCollector;
 import ai.djl.training.Trainer;
 import ai.djl.training.dataset.Batch;
+import ai.djl.training.dataset.BatchSampler;
 import ai.djl.training.dataset.RandomAccessDataset;
 import ai.djl.training.loss.Loss;
 import ai.djl.training.optimizer.Optimizer;
 import ai.djl.training.tracker.Tracker;
 import ai.djl.translate.TranslateException;
-
+import ai.djl.util.Pair;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import de.djl.classification.TrainingInstrumentation.Phase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * AlexNet-artiges Klassifikationsnetz mit konfigurierbaren Taps (pre/pool/fc/logits)
  * für Aktivierungsvisualisierung. Kompatibel mit DJL 0.33.
  */
 public class ClassificationModel {
+    private static final Logger log = LoggerFactory.getLogger(ClassificationModel.class);
 
     public static final int DEFAULT_IMAGE_SIZE = 224;
+    private static final long PROGRESS_INTERVAL_NANOS = 250_000_000L;
+    private static final String LAYOUT_FILE = "layout.properties";
 
     public Model getModel() { return model; }
     public Loss  getLoss()  { return loss;  }
 
+    /** Top-k der Validierung; nur bei mehr als {@value} Klassen aussagekräftig und daher nur dann erfasst. */
+    public static final int TOP_K = 5;
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
     public static class History {
         public final List<Double> trainLoss = new ArrayList<>();
         public final List<Double> valLoss   = new ArrayList<>();
         public final List<Double> trainAcc  = new ArrayList<>();
         public final List<Double> valAcc    = new ArrayList<>();
-        public int[][] confusion2x2 = new int[][]{{0,0},{0,0}};
+        /** Top-{@link #TOP_K}-Accuracy der Validierung pro Epoche (leer bei höchstens {@link #TOP_K} Klassen). */
+        public final List<Double> valTopK   = new ArrayList<>();
+        public final List<Long> nativeArrays = new ArrayList<>();
+        /** Konfusionsmatrix der letzten Val-Epoche: Zeile = wahre Klasse, Spalte = Vorhersage. */
+        public int[][] confusion = new int[0][0];
         public void add(double tl, double vl, double ta, double va) {
             trainLoss.add(tl); valLoss.add(vl); trainAcc.add(ta); valAcc.add(va);
         }
+        /** Hängt die Epochen eines weiteren {@link ClassificationModel#fit}-Aufrufs an (gleiches Modell, weitertrainiert). */
+        public void append(History next) {
+            trainLoss.addAll(next.trainLoss); valLoss.addAll(next.valLoss);
+            trainAcc.addAll(next.trainAcc); valAcc.addAll(next.valAcc);
+            valTopK.addAll(next.valTopK);
+            nativeArrays.addAll(next.nativeArrays);
+            confusion = next.confusion;
+        }
     }
 
     private final Settings.Setting setting;
@@ -64,6 +97,23 @@ public class ClassificationModel {
     private final NDManager snapManager;
     private final Map<String, NDArray> lastActivations;
 
+    private int loaderWorkers = 0;
+    private boolean shuffle = true;
+    private boolean progress = true;
+    private TrainingScheduler scheduler;
+    private Checkpointer checkpointer;
+    private Path resumeFrom;
+    private GradientSync sync;
+    private DataType precision = DataType.FLOAT32;
+    private TrainingInstrumentation instr = TrainingInstrumentation.OFF;
+    private AugmentingBatchifier augmentation;
+    /** In früheren {@link #fit}-Aufrufen trainierte Epochen (Successive Halving), für die Augmentierungs-Epoche. */
+    private int epochOffset = 0;
+
+    private volatile boolean tapsArmed = false;
+    private int tapEverySteps = 0;
+    private int tapSamples = 1;
+
     public ClassificationModel(Settings.Setting setting, int numClasses, boolean enableTaps) {
         this.setting = setting;
         this.numClasses = numClasses;
@@ -79,6 +129,77 @@ public class ClassificationModel {
         this.model.setBlock(buildBlock());
     }
 
+    /**
+     * Anzahl Threads, die in {@link #fit} die nächsten Batches parallel zum Training laden. Die Tiefe der
+     * Vorschau bestimmt {@code optPrefetchNumber} des Datasets; 0 lädt synchron im Trainings-Thread.
+     */
+    public void setDataLoading(int workers) {
+        this.loaderWorkers = Math.max(0, workers);
+    }
+
+    /** Ob der Train-Split gemischt wird (wie beim Dataset konfiguriert); relevant für den Checkpoint-Sampler. */
+    public void setShuffle(boolean shuffle) {
+        this.shuffle = shuffle;
+    }
+
+    /** {@code false}: keine Konsolen-Progressbar, Epochen-Zusammenfassung nur ins Log (z. B. parallele Sweeps). */
+    public void setProgress(boolean progress) {
+        this.progress = progress;
+    }
+
+    /** Phasen-Timer und Metrik-Export für {@link #fit}; {@code null} schaltet die Instrumentierung ab. */
+    public void setInstrumentation(TrainingInstrumentation instrumentation) {
+        this.instr = instrumentation != null ? instrumentation : TrainingInstrumentation.OFF;
+    }
+
+    /** Optionaler Scheduler, der nach jeder Epoche über einen Abbruch entscheidet (z. B. {@link EarlyStopping}). */
+    public void setScheduler(TrainingScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Aktiviert Checkpoints; {@code resumeFrom} (optional) wird beim nächsten {@link #fit} einmalig geladen.
+     * Mit Checkpointer (und bei {@link #setGradientSync}) rechnet das Training mit {@link StatefulOptimizer},
+     * dessen Momente mitgesichert werden.
+     */
+    public void setCheckpointing(Checkpointer checkpointer, Path resumeFrom) {
+        this.checkpointer = checkpointer;
+        this.resumeFrom = resumeFrom;
+    }
+
+    /**
+     * Rechengenauigkeit in {@link #fit}: mit {@code BFLOAT16} laufen Parameter und Aktivierungen in bf16,
+     * Optimizer und Loss in float32 (siehe {@link MixedPrecision}). Nach {@code fit} ist das Modell wieder float32.
+     */
+    public void setPrecision(DataType precision) {
+        this.precision = precision;
+    }
+
+    /**
+     * Augmentierung des Train-Datasets: {@link #fit} setzt vor jeder Epoche deren Nummer (auch über mehrere
+     * {@code fit}-Aufrufe und {@code --resume} hinweg fortlaufend), damit jede Epoche andere Zufallswerte sieht.
+     */
+    public void setAugmentation(AugmentingBatchifier augmentation) {
+        this.augmentation = augmentation;
+    }
+
+    /**
+     * Datenparalleles Training: Startgewichte kommen von Rank 0, Gradienten werden vor jedem
+     * {@code trainer.step()} über alle Ranks gemittelt, Epochen-Metriken global summiert.
+     * Alle Ranks brauchen gleich viele Trainings-Batches (siehe {@code CNNPipeline.shard}).
+     */
+    public void setGradientSync(GradientSync sync) {
+        this.sync = sync;
+    }
+
+    /**
+     * Initialisiert die Parameter nur beim ersten Mal; weitere {@link #fit}-Aufrufe (Successive Halving)
+     * oder eine {@link ActivationViewer.Session} nach dem Training setzen so das Gelernte nicht zurück.
+     */
+    void initializeIfNeeded(Trainer trainer, Shape inputShape) {
+        if (!model.getBlock().isInitialized()) trainer.initialize(inputShape);
+    }
+
     public Block buildBlock() {
         SequentialBlock net = new SequentialBlock();
 
@@ -144,123 +265,505 @@ public class ClassificationModel {
     private void addTap(SequentialBlock net, String name) {
         if (!enableTaps) return;
         net.add(new LambdaBlock(list -> {
+            if (!tapsArmed) return list;
             try {
                 NDArray a = list.head();
-                int dim = a.getShape().dimension();
-                if (dim >= 1) {
-                    float[] data = a.toFloatArray();
-                    NDArray snap = snapManager.create(data, a.getShape());
-                    lastActivations.put(name, snap);
+                if (a.getShape().dimension() >= 1) {
+                    long k = Math.min(tapSamples, a.getShape().get(0));
+                    NDArray snap = a.get(new NDIndex("0:" + k)).stopGradient();
+                    snap = snap.getDataType() == DataType.FLOAT32 ? snap.duplicate() : snap.toType(DataType.FLOAT32, true);
+                    snap.attach(snapManager);
+                    NDArray old = lastActivations.put(name, snap);
+                    if (old != null) old.close();
                 }
             } catch (Throwable ignore) { /* taps sollen niemals forward brechen */ }
             return list;
         }));
     }
 
+    /**
+     * Taps zeichnen nur auf, solange sie scharf geschaltet sind. {@link #fit} schaltet sie alle
+     * {@code everySteps} Trainingsschritte (0 = nie) sowie für den ersten Validierungs-Batch der letzten
+     * Epoche scharf; festgehalten werden jeweils die ersten {@code samples} Beispiele des Batches.
+     */
+    public void setTapSchedule(int everySteps, int samples) {
+        this.tapEverySteps = Math.max(0, everySteps);
+        this.tapSamples = Math.max(1, samples);
+    }
+
+    /** Schaltet die Taps für die folgenden Forward-Pässe scharf (z. B. für {@link ActivationViewer}). */
+    public void armTaps()    { this.tapsArmed = enableTaps; }
+    public void disarmTaps() { this.tapsArmed = false; }
+
+    /**
+     * Ein Inferenz-Forward über {@code input}, bei dem alle Taps den kompletten Batch festhalten.
+     * @return Tap-Name → Aktivierung mit Batch-Dimension vorne
+     */
+    public Map<String, NDArray> captureActivations(Trainer trainer, NDList input) {
+        int previous = tapSamples;
+        tapSamples = (int) input.head().getShape().get(0);
+        armTaps();
+        try {
+            trainer.evaluate(input);
+        } finally {
+            disarmTaps();
+            tapSamples = previous;
+        }
+        return getLastActivationsSnapshot();
+    }
+
+    /** Der Optimizer, mit dem {@link #fit} rechnet; auch für Messläufe wie {@link ThreadTuner}. */
+    Optimizer newOptimizer() {
+        // Datenparallel rechnen alle Ranks mit demselben Optimizer, unabhängig davon, wer Checkpoints schreibt –
+        // sonst laufen die Gewichte trotz gemittelter Gradienten auseinander.
+        return checkpointer != null || sync != null ? StatefulOptimizer.of(setting) : makeOptimizer();
+    }
+
     private Optimizer makeOptimizer() {
         String opt = setting.optimizer == null ? "adam" : setting.optimizer.toLowerCase(Locale.ROOT);
         float lr = (float) setting.learningRate;
         return switch (opt) {
             case "sgd" -> Optimizer.sgd().setLearningRateTracker(Tracker.fixed(lr)).optMomentum(0.9f).build();
-            case "rmsprop" -> Optimizer.rmsprop().optLearningRateTracker(Tracker.fixed(lr)).build();
+            // DJLs PyTorch-Engine implementiert rmspropUpdate nicht; StatefulOptimizer rechnet dieselbe Definition.
+            case "rmsprop" -> StatefulOptimizer.of(setting);
             default -> Optimizer.adam().optLearningRateTracker(Tracker.fixed(lr)).build();
         };
     }
 
+    @SuppressWarnings("try") // Batch-Scopes werden nur für close() geöffnet
     public History fit(RandomAccessDataset train, RandomAccessDataset val, int epochs, int imageSize, int inChannels)
             throws IOException, TranslateException {
         History hist = new History();
-
-        try (Trainer trainer = model.newTrainer(new DefaultTrainingConfig(loss).optOptimizer(makeOptimizer()))) {
-            trainer.initialize(new Shape(1, inChannels, imageSize, imageSize));
+        int accumulation = setting.accumulation();
+
+        Optimizer optimizer = newOptimizer();
+        StatefulOptimizer stateful = optimizer instanceof StatefulOptimizer so ? so : null;
+        MixedPrecision.MasterWeightOptimizer masters =
+                precision != DataType.FLOAT32 ? new MixedPrecision.MasterWeightOptimizer(optimizer) : null;
+        DefaultTrainingConfig config = new DefaultTrainingConfig(loss)
+                .optOptimizer(masters != null ? masters : optimizer);
+        ExecutorService loader = loaderWorkers > 0 ? Executors.newFixedThreadPool(loaderWorkers) : null;
+        if (loader != null) config.optExecutorService(loader);
+
+        instr.open();
+        try (Trainer trainer = model.newTrainer(config)) {
+            Shape inputShape = new Shape(1, inChannels, imageSize, imageSize);
+            initializeIfNeeded(trainer, inputShape);
             final int totalBatches = (int) Math.ceil((double) train.size() / Math.max(1, setting.batchSize));
 
-            for (int epoch = 0; epoch < epochs; epoch++) {
-                System.out.printf("%nEpoch %d/%d%n", epoch + 1, epochs);
-
-                double sumLossT = 0.0; long nT = 0; long correctT = 0; int batchCount = 0;
-
-                for (Batch batch : trainer.iterateDataset(train)) {
-                    NDArray preds; NDArray L;
-                    try (GradientCollector gc = trainer.newGradientCollector()) {
-                        preds = trainer.forward(batch.getData()).getFirst();
-
-                        NDArray y = batch.getLabels().head().squeeze();
-                        if (y.getShape().dimension() == 0) {
-                            y = y.expandDims(0);
+            long step = 0;
+            int startEpoch = 0;
+            Checkpointer.State resumed = null;
+            if (resumeFrom != null) {
+                resumed = restore(Checkpointer.load(resumeFrom), stateful);
+                resumeFrom = null;
+                hist = resumed.history != null ? resumed.history : hist;
+                step = resumed.step;
+                startEpoch = resumed.epoch;
+            }
+            if (sync != null) sync.broadcast(parameterArrays(false));
+            // Erst nach Init/Resume/Broadcast casten und vor dem ersten forward (der ParameterStore cached die Arrays).
+            DataType compute = masters != null && MixedPrecision.cast(model.getBlock(), precision) ? precision : DataType.FLOAT32;
+            // Checkpoints sichern unter reduzierter Genauigkeit die float32-Master statt der gerundeten Gewichte.
+            MixedPrecision.MasterWeightOptimizer ckptMasters = compute != DataType.FLOAT32 ? masters : null;
+
+            int epochsRun = startEpoch;
+            for (int epoch = startEpoch; epoch < epochs; epoch++) {
+                if (progress) System.out.printf("%nEpoch %d/%d%n", epoch + 1, epochs);
+                instr.startEpoch(epoch);
+                if (augmentation != null) augmentation.setEpoch(epochOffset + epoch);
+                epochsRun = epoch + 1;
+
+                int batchCount = 0;
+                int skip = 0;
+                long lastDraw = 0;
+                double trainLoss, trainAcc;
+
+                try (DeviceMetrics mT = new DeviceMetrics(trainer.getManager())) {
+                    if (resumed != null && epoch == startEpoch) {
+                        skip = resumed.batch;
+                        mT.restore(resumed.partialLossSum, resumed.partialCorrect, resumed.partialCount);
+                    }
+                    List<Batch> group = new ArrayList<>(accumulation);
+                    Iterator<Batch> batches = trainBatches(trainer, train, epoch, loader).iterator();
+                    while (batches.hasNext()) {
+                        long t = instr.begin(Phase.DATA_WAIT);
+                        Batch batch = batches.next();
+                        instr.end(Phase.DATA_WAIT, t);
+                        if (skip > 0) {
+                            // Schon vor dem Checkpoint trainiert: gleiche Reihenfolge dank Seed, daher nur überspringen.
+                            skip--;
+                            batchCount++;
+                            batch.close();
+                            continue;
                         }
-                        if (y.getShape().dimension() > 1) {
-                            y = y.reshape(new Shape(y.size()));
+                        group.add(batch);
+                        if (group.size() < accumulation && batches.hasNext()) continue;
+
+                        long samples = trainStep(trainer, group, mT, tapEverySteps > 0 && step % tapEverySteps == 0, compute);
+                        step++;
+                        batchCount += group.size();
+                        group.clear();
+
+                        if (checkpointer != null && batchCount < totalBatches && checkpointer.dueByTime()) {
+                            syncMetrics(mT);
+                            t = instr.begin(Phase.CHECKPOINT);
+                            checkpoint(stateful, ckptMasters, inputShape, hist, epoch, batchCount, step, null, mT);
+                            instr.end(Phase.CHECKPOINT, t);
+                        }
+                        long now = System.nanoTime();
+                        if (progress && (batchCount == totalBatches || now - lastDraw >= PROGRESS_INTERVAL_NANOS)) {
+                            syncMetrics(mT);
+                            printProgressBar(batchCount, totalBatches, mT.avgLoss(), mT.accuracy());
+                            lastDraw = now;
+                        }
+                        instr.endBatch(batchCount, step, samples);
+                    }
+                    long t = instr.begin(Phase.METRIC_SYNC);
+                    mT.sync();
+                    if (sync != null) mT.reduce(sync);
+                    instr.end(Phase.METRIC_SYNC, t);
+                    trainLoss = mT.avgLoss();
+                    trainAcc = mT.accuracy();
+                }
+                if (progress) System.out.println();
+
+                double valLoss, valAcc;
+
+                // Jede Epoche den ersten Val-Batch festhalten: bei vorzeitigem Abbruch bleibt so ein aktueller Snapshot.
+                boolean captureVal = true;
+                long tVal = instr.begin(Phase.VALIDATION);
+                try (DeviceMetrics mV = new DeviceMetrics(trainer.getManager(), numClasses, TOP_K)) {
+                    for (Batch batch : trainer.iterateDataset(val)) {
+                        try (NDManager scope = scopeOf(trainer, batch)) {
+                            if (captureVal) armTaps();
+                            NDArray preds = forward(trainer, batch.getData(), compute);
+                            disarmTaps();
+                            captureVal = false;
+                            NDArray y = labelsOf(batch);
+
+                            NDArray L = loss.evaluate(new NDList(y), new NDList(preds));
+                            if (L.getShape().dimension() != 0) L = L.mean();
+                            mV.add(L, preds, y);
+                        } finally {
+                            batch.close();
                         }
-                        y = y.toType(DataType.INT64, false);
-
-                        NDArray Larr = loss.evaluate(new NDList(y), new NDList(preds));
-                        L = (Larr.getShape().dimension() == 0) ? Larr : Larr.mean();
-                        gc.backward(L);
                     }
-                    trainer.step();
+                    mV.sync();
+                    if (sync != null) mV.reduce(sync);
+                    valLoss = mV.avgLoss();
+                    valAcc = mV.accuracy();
+                    hist.confusion = mV.confusion();
+                    if (numClasses > TOP_K) hist.valTopK.add(mV.topKAccuracy());
+                }
+                instr.end(Phase.VALIDATION, tVal);
+                hist.add(trainLoss, valLoss, trainAcc, valAcc);
+                long nativeArrays = nativeArrayCount(model.getNDManager());
+                hist.nativeArrays.add(nativeArrays);
+                instr.endEpoch(trainLoss, trainAcc, valLoss, valAcc, nativeArrays);
+
+                if (progress) {
+                    System.out.printf("→ train: loss=%.4f acc=%.2f%%   |   val: loss=%.4f acc=%.2f%%%n",
+                            trainLoss, trainAcc * 100.0, valLoss, valAcc * 100.0);
+                } else {
+                    log.info("[{}] epoch {}/{} train: loss={} acc={} | val: loss={} acc={}", setting.name, epoch + 1, epochs,
+                            String.format(Locale.ROOT, "%.4f", trainLoss), String.format(Locale.ROOT, "%.4f", trainAcc),
+                            String.format(Locale.ROOT, "%.4f", valLoss), String.format(Locale.ROOT, "%.4f", valAcc));
+                }
+                log.info("Epoch {}: {} native NDArrays alive", epoch + 1, nativeArrays);
 
-                    long bs = preds.getShape().get(0);
-                    sumLossT += L.getFloat() * bs;
-                    nT += bs;
+                if (checkpointer != null && checkpointer.dueAfterEpoch(epoch + 1, epochs)) {
+                    long t = instr.begin(Phase.CHECKPOINT);
+                    checkpoint(stateful, ckptMasters, inputShape, hist, epoch + 1, 0, step, valAcc, null);
+                    instr.end(Phase.CHECKPOINT, t);
+                }
 
-                    NDArray labels = batch.getLabels().head().toType(DataType.INT64, false);
-                    long correctBatch = preds.argMax(1).eq(labels).toType(DataType.INT64, false).sum().getLong();
-                    correctT += correctBatch;
+                if (scheduler != null && scheduler.shouldStop(epoch, hist)) {
+                    log.info("[{}] {} stopped training after epoch {}/{}", setting.name, scheduler, epoch + 1, epochs);
+                    break;
+                }
+            }
+            epochOffset += epochsRun;
+            // Nur zurückcasten, wenn auch gecastet wurde (Cast kann z. B. bei TorchScript ausfallen).
+            if (compute != DataType.FLOAT32) masters.restoreFloat32(model.getBlock());
+        } finally {
+            if (loader != null) loader.shutdownNow();
+            if (checkpointer != null) checkpointer.awaitWrites();
+            instr.close();
+        }
+        return hist;
+    }
 
-                    batch.close();
+    /**
+     * Train-Batches einer Epoche. Mit Checkpointer mischt ein eigener Sampler mit {@code seed + epoch}: so sieht
+     * ein Resume dieselbe Reihenfolge, ohne den prozessweiten Engine-Seed zu setzen (den parallele Sweep-Jobs
+     * teilen). Dropout-Masken kommen weiter aus dem Engine-Generator und sind nach einem Resume nicht identisch.
+     */
+    private Iterable<Batch> trainBatches(Trainer trainer, RandomAccessDataset train, int epoch, ExecutorService loader)
+            throws IOException, TranslateException {
+        if (checkpointer == null || !shuffle) return trainer.iterateDataset(train);
+        BatchSampler sampler = new BatchSampler(new SeededShuffleSampler(checkpointer.seed() + epoch), setting.batchSize, false);
+        return train.getData(trainer.getManager(), sampler, loader);
+    }
 
-                    batchCount++;
-                    double avgLoss = sumLossT / Math.max(1, nT);
-                    double acc = nT == 0 ? 0.0 : (double) correctT / nT;
-                    printProgressBar(batchCount, totalBatches, avgLoss, acc);
+    /**
+     * Ein Optimizer-Schritt über die Micro-Batches in {@code group}: jeder Loss wird mit seinem Anteil an der
+     * Gesamtzahl der Beispiele gewichtet und die Gradienten summieren sich im Collector – das entspricht einem
+     * großen Batch, es lebt aber immer nur der Graph eines Micro-Batches. Schließt alle Batches der Gruppe.
+     *
+     * @return Anzahl Beispiele des Schritts
+     */
+    @SuppressWarnings("try") // Batch-Scopes werden nur für close() geöffnet
+    private long trainStep(Trainer trainer, List<Batch> group, DeviceMetrics metrics, boolean tap, DataType compute)
+            throws IOException {
+        long total = 0;
+        for (Batch b : group) total += b.getSize();
+        try (GradientCollector gc = trainer.newGradientCollector()) {
+            for (Batch batch : group) {
+                try (NDManager scope = scopeOf(trainer, batch)) {
+                    if (tap && batch == group.get(0)) armTaps();
+                    long t = instr.begin(Phase.FORWARD);
+                    NDArray preds = forward(trainer, batch.getData(), compute);
+                    disarmTaps();
+                    NDArray y = labelsOf(batch);
+
+                    NDArray Larr = loss.evaluate(new NDList(y), new NDList(preds));
+                    NDArray L = (Larr.getShape().dimension() == 0) ? Larr : Larr.mean();
+                    instr.end(Phase.FORWARD, t);
+                    t = instr.begin(Phase.BACKWARD);
+                    gc.backward(group.size() == 1 ? L : L.mul((double) batch.getSize() / total));
+                    instr.end(Phase.BACKWARD, t);
+                    t = instr.begin(Phase.METRIC_SYNC);
+                    metrics.add(L, preds, y);
+                    instr.end(Phase.METRIC_SYNC, t);
                 }
-                System.out.println();
+            }
+        } finally {
+            group.forEach(Batch::close);
+        }
+        if (sync != null) {
+            long t = instr.begin(Phase.GRAD_SYNC);
+            syncGradients();
+            instr.end(Phase.GRAD_SYNC, t);
+        }
+        long t = instr.begin(Phase.OPTIMIZER_STEP);
+        trainer.step();
+        instr.end(Phase.OPTIMIZER_STEP, t);
+        return total;
+    }
 
-                double trainLoss = sumLossT / Math.max(1, nT);
-                double trainAcc = nT == 0 ? 0.0 : (double) correctT / nT;
+    private void syncMetrics(DeviceMetrics metrics) {
+        long t = instr.begin(Phase.METRIC_SYNC);
+        metrics.sync();
+        instr.end(Phase.METRIC_SYNC, t);
+    }
 
-                double sumLossV = 0.0; long nV = 0; long correctV = 0;
-                int[][] cm = new int[][]{{0,0},{0,0}};
+    /** Forward in {@code compute}-Genauigkeit; die Logits kommen immer als float32 zurück (Softmax/Loss in fp32). */
+    private static NDArray forward(Trainer trainer, NDList data, DataType compute) {
+        if (compute == DataType.FLOAT32) return trainer.forward(data).getFirst();
+        return trainer.forward(MixedPrecision.castAll(data, compute)).getFirst().toType(DataType.FLOAT32, false);
+    }
 
-                for (Batch batch : trainer.iterateDataset(val)) {
-                    NDArray preds = trainer.forward(batch.getData()).getFirst();
+    /**
+     * Schreibt einen Checkpoint. Mit {@code masters} (Training in bf16) werden die float32-Master in eine
+     * frisch initialisierte Kopie des Blocks übertragen und diese gesichert, damit ein Resume exakt weiterrechnet.
+     */
+    private void checkpoint(StatefulOptimizer opt, MixedPrecision.MasterWeightOptimizer masters, Shape inputShape,
+                            History hist, int epoch, int batch, long step, Double valAcc, DeviceMetrics partial)
+            throws IOException {
+        Checkpointer.State st = new Checkpointer.State();
+        st.epoch = epoch;
+        st.batch = batch;
+        st.step = step;
+        st.seed = checkpointer.seed();
+        st.valAcc = valAcc;
+        st.history = hist;
+        Map<String, String> names = parameterNames(true);
+        st.optimizerSteps = opt.stepCounts(names);
+        if (partial != null) {
+            st.partialLossSum = partial.lossSum();
+            st.partialCorrect = partial.correct();
+            st.partialCount = partial.count();
+        }
+        if (masters == null) {
+            checkpointer.save(model.getBlock(), opt.encodeSlots(names), st);
+            return;
+        }
+        try (NDManager tmp = model.getNDManager().newSubManager()) {
+            Block copy = buildBlock();
+            copy.initialize(tmp, DataType.FLOAT32, inputShape);
+            masters.copyFloat32(model.getBlock(), copy);
+            checkpointer.save(copy, opt.encodeSlots(names), st);
+        }
+    }
 
-                    NDArray y = batch.getLabels().head().squeeze();
-                    if (y.getShape().dimension() == 0) y = y.expandDims(0);
-                    if (y.getShape().dimension() > 1) y = y.reshape(new Shape(y.size()));
-                    y = y.toType(DataType.INT64, false);
+    private Checkpointer.State restore(Checkpointer.Loaded ckpt, StatefulOptimizer opt) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(ckpt.params()))) {
+            model.getBlock().loadParameters(model.getNDManager(), in);
+        } catch (MalformedModelException e) {
+            throw new IOException("Checkpoint does not match model " + setting.name + ": " + ckpt.dir(), e);
+        }
+        if (opt != null) {
+            opt.restore(model.getNDManager(), ckpt.optimizer(), ckpt.state().optimizerSteps, parameterNames(false));
+        }
+        log.info("[{}] resumed from {} (epoch {}, batch {})", setting.name, ckpt.dir(), ckpt.state().epoch + 1, ckpt.state().batch);
+        return ckpt.state();
+    }
 
-                    NDArray L = loss.evaluate(new NDList(y), new NDList(preds));
-                    if (L.getShape().dimension() != 0) L = L.mean();
+    private void syncGradients() throws IOException {
+        List<NDArray> grads = new ArrayList<>();
+        try {
+            for (NDArray w : parameterArrays(true)) grads.add(w.getGradient());
+            sync.allReduceMean(grads);
+        } finally {
+            grads.forEach(NDArray::close);
+        }
+    }
 
-                    long bs = preds.getShape().get(0);
-                    sumLossV += L.getFloat() * bs;
-                    nV += bs;
+    /** Parameter-Arrays in Block-Reihenfolge ({@code trainable}: nur die mit Gradient). */
+    private List<NDArray> parameterArrays(boolean trainable) {
+        List<NDArray> out = new ArrayList<>();
+        for (Pair<String, Parameter> p : model.getBlock().getParameters()) {
+            if (!trainable || p.getValue().requiresGradient()) out.add(p.getValue().getArray());
+        }
+        return out;
+    }
 
-                    correctV += preds.argMax(1).eq(y).toType(DataType.INT64, false).sum().getLong();
+    /** Parameter-ID → Block-Pfad ({@code byId}) bzw. umgekehrt; IDs sind pro Prozess zufällig, Pfade stabil. */
+    private Map<String, String> parameterNames(boolean byId) {
+        Map<String, String> out = new HashMap<>();
+        for (Pair<String, Parameter> p : model.getBlock().getParameters()) {
+            if (byId) out.put(p.getValue().getId(), p.getKey());
+            else out.put(p.getKey(), p.getValue().getId());
+        }
+        return out;
+    }
 
-                    if (numClasses == 2) {
-                        long[] p = preds.argMax(1).toLongArray();
-                        long[] yy = y.toLongArray();
-                        for (int i = 0; i < p.length; i++) {
-                            int yi = (int) yy[i], pi = (int) p[i];
-                            if (yi>=0 && yi<2 && pi>=0 && pi<2) cm[yi][pi]++;
-                        }
-                    }
-                    batch.close();
-                }
+    /**
+     * Kurzlebiger Manager für einen Batch: Daten und Labels werden dorthin verschoben, sodass alle daraus
+     * abgeleiteten Zwischenergebnisse (Logits, Loss, argMax …) beim Schließen sofort freigegeben werden.
+     */
+    private static NDManager scopeOf(Trainer trainer, Batch batch) {
+        NDManager scope = trainer.getManager().newSubManager();
+        batch.getData().attach(scope);
+        batch.getLabels().attach(scope);
+        return scope;
+    }
 
-                double valLoss = sumLossV / Math.max(1, nV);
-                double valAcc = nV == 0 ? 0.0 : (double) correctV / nV;
-                hist.confusion2x2 = cm;
-                hist.add(trainLoss, valLoss, trainAcc, valAcc);
+    /** Anzahl lebender NDArrays unter {@code manager} (inkl. Sub-Manager), -1 wenn die Engine das nicht meldet. */
+    static long nativeArrayCount(NDManager manager) {
+        return manager instanceof BaseNDManager base ? base.getManagedArrays().size() : -1;
+    }
+
+    /** Labels als 1D {@code INT64} (N), egal ob der Loader (N), (N,1) oder einen Skalar liefert. */
+    static NDArray labelsOf(Batch batch) {
+        NDArray y = batch.getLabels().head().squeeze();
+        if (y.getShape().dimension() == 0) y = y.expandDims(0);
+        if (y.getShape().dimension() > 1) y = y.reshape(new Shape(y.size()));
+        return y.toType(DataType.INT64, false);
+    }
+
+    /**
+     * Summiert Loss und Treffer auf dem Device, damit der Trainings-Loop nicht pro Batch synchronisiert.
+     * Erst {@link #sync()} kopiert die Werte in die JVM.
+     */
+    static final class DeviceMetrics implements AutoCloseable {
+        private final NDManager manager;
+        private final NDArray lossSum;
+        private final NDArray correct;
+        private final int classes;
+        private final int topK;
+        private final NDArray confusion;
+        private final NDArray topHits;
+        private long count;
+        private long syncedCount;
+        private double syncedLoss;
+        private long syncedCorrect;
+        private long[] syncedConfusion = new long[0];
+        private long syncedTopHits;
+
+        DeviceMetrics(NDManager parent) {
+            this(parent, 0, 0);
+        }
 
-                System.out.printf("→ train: loss=%.4f acc=%.2f%%   |   val: loss=%.4f acc=%.2f%%%n",
-                        trainLoss, trainAcc * 100.0, valLoss, valAcc * 100.0);
+        /**
+         * Mit {@code classes > 0} zusätzlich Konfusionsmatrix (C×C) und Top-k-Treffer; beides bleibt bis
+         * {@link #sync} auf dem Gerät. Top-k nur bei {@code classes > topK}.
+         */
+        DeviceMetrics(NDManager parent, int classes, int topK) {
+            this.manager = parent.newSubManager();
+            this.lossSum = manager.zeros(new Shape(), DataType.FLOAT32);
+            this.correct = manager.zeros(new Shape(), DataType.INT64);
+            this.classes = classes;
+            this.topK = topK;
+            this.confusion = classes > 0 ? manager.zeros(new Shape(classes, classes), DataType.INT64) : null;
+            this.topHits = classes > topK && topK > 0 ? manager.zeros(new Shape(), DataType.INT64) : null;
+        }
+
+        void add(NDArray meanLoss, NDArray preds, NDArray y) {
+            long bs = preds.getShape().get(0);
+            lossSum.addi(meanLoss.stopGradient().mul(bs));
+            NDArray p = preds.argMax(1);
+            correct.addi(p.eq(y).toType(DataType.INT64, false).sum());
+            count += bs;
+            if (confusion == null) return;
+            // Bincount von y*C + pred als Produkt der One-Hots: (C×B)·(B×C) statt B×C² Einträgen.
+            NDArray yHot = y.oneHot(classes);
+            confusion.addi(yHot.transpose().matMul(p.oneHot(classes)).toType(DataType.INT64, false));
+            if (topHits != null) {
+                // Treffer, wenn weniger als k Klassen höher bewertet sind als die wahre.
+                NDArray trueScore = preds.mul(yHot).sum(new int[]{1}, true);
+                NDArray higher = preds.gt(trueScore).toType(DataType.INT32, false).sum(new int[]{1});
+                topHits.addi(higher.lt(topK).toType(DataType.INT64, false).sum());
             }
         }
-        return hist;
+
+        void sync() {
+            syncedLoss = lossSum.getFloat();
+            syncedCorrect = correct.getLong();
+            syncedCount = count;
+            if (confusion != null) syncedConfusion = confusion.toLongArray();
+            if (topHits != null) syncedTopHits = topHits.getLong();
+        }
+
+        /** Übernimmt Summen einer unterbrochenen Epoche (Resume mitten in der Epoche). */
+        void restore(double loss, long hits, long n) {
+            lossSum.addi(loss);
+            correct.addi(hits);
+            count += n;
+        }
+
+        /** Ersetzt die synchronisierten Werte durch die Summen über alle Ranks. */
+        void reduce(GradientSync sync) throws IOException {
+            double[] local = new double[4 + syncedConfusion.length];
+            local[0] = syncedLoss;
+            local[1] = syncedCorrect;
+            local[2] = syncedCount;
+            local[3] = syncedTopHits;
+            for (int i = 0; i < syncedConfusion.length; i++) local[4 + i] = syncedConfusion[i];
+            double[] g = sync.allReduceSum(local);
+            syncedLoss = g[0];
+            syncedCorrect = (long) g[1];
+            syncedCount = (long) g[2];
+            syncedTopHits = (long) g[3];
+            for (int i = 0; i < syncedConfusion.length; i++) syncedConfusion[i] = (long) g[4 + i];
+        }
+
+        int[][] confusion() {
+            int[][] cm = new int[classes][classes];
+            for (int i = 0; i < syncedConfusion.length; i++) cm[i / classes][i % classes] = (int) syncedConfusion[i];
+            return cm;
+        }
+
+        double topKAccuracy() { return syncedCount == 0 ? 0.0 : (double) syncedTopHits / syncedCount; }
+
+        double lossSum()  { return syncedLoss; }
+        long correct()    { return syncedCorrect; }
+        long count()      { return syncedCount; }
+        double avgLoss()  { return syncedLoss / Math.max(1, syncedCount); }
+        double accuracy() { return syncedCount == 0 ? 0.0 : (double) syncedCorrect / syncedCount; }
+
+        @Override public void close() { manager.close(); }
     }
 
     public void save(Path outputDir, List<String> synset) throws IOException {
@@ -271,6 +774,58 @@ public class ClassificationModel {
         model.setProperty("classes", String.join(",", synset));
         model.save(dir, "cnn");
         Files.writeString(dir.resolve("synset.txt"), String.join("\n", synset));
+        // Tap-Blöcke stehen mit in der Parameterdatei; load() muss denselben Aufbau erzeugen.
+        Files.writeString(dir.resolve(LAYOUT_FILE), "taps=" + enableTaps + "\n");
+    }
+
+    /**
+     * Lädt ein mit {@link #save} geschriebenes Modell ({@code <dir>/cnn-0000.params}) für Inferenz. Der Aufbau
+     * (mit/ohne Tap-Blöcke) steht in {@code layout.properties}; bei älteren Modellen ohne diese Datei wird er am
+     * Parameterstrom erkannt, indem beide Varianten probiert werden.
+     */
+    public static ClassificationModel load(Path dir, Settings.Setting setting, int numClasses)
+            throws IOException, MalformedModelException {
+        Path layout = dir.resolve(LAYOUT_FILE);
+        if (Files.exists(layout)) {
+            return load(dir, setting, numClasses, Files.readString(layout).contains("taps=true"));
+        }
+        try {
+            return load(dir, setting, numClasses, false);
+        } catch (MalformedModelException | IOException | RuntimeException withoutTaps) {
+            try {
+                ClassificationModel cm = load(dir, setting, numClasses, true);
+                log.info("{} has no {}; detected a layout with tap blocks", dir, LAYOUT_FILE);
+                return cm;
+            } catch (MalformedModelException | IOException | RuntimeException withTaps) {
+                MalformedModelException e = new MalformedModelException("Parameters in " + dir
+                        + " match neither the layout with nor without tap blocks of setting " + setting.name
+                        + " (" + numClasses + " classes)", withoutTaps);
+                e.addSuppressed(withTaps);
+                throw e;
+            }
+        }
+    }
+
+    private static ClassificationModel load(Path dir, Settings.Setting setting, int numClasses, boolean taps)
+            throws IOException, MalformedModelException {
+        ClassificationModel cm = new ClassificationModel(setting, numClasses, taps);
+        try {
+            cm.model.load(dir, "cnn");
+        } catch (MalformedModelException | IOException | RuntimeException e) {
+            cm.model.close();
+            throw e;
+        }
+        return cm;
+    }
+
+    /** Ob das Netz Tap-Blöcke enthält (bei geladenen Modellen: der erkannte Aufbau). */
+    boolean hasTaps() {
+        return enableTaps;
+    }
+
+    /** Setting-Name aus dem Modellverzeichnis ({@code <setting>-yyyyMMdd-HHmmss[-int8]}, siehe {@link #save}). */
+    public static String settingNameOf(Path modelDir) {
+        return modelDir.getFileName().toString().replaceFirst("-int8$", "").replaceFirst("-\\d{8}-\\d{6}$", "");
     }
 
     public Map<String, NDArray> getLastActivationsSnapshot() {
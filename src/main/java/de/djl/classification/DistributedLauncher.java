@@ -0,0 +1,64 @@
+package de.djl.classification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Startet {@code --nproc N} Trainingsprozesse ({@link CNNPipeline} mit {@code --dist-rank i --dist-world N})
+ * auf diesem Host und wartet auf alle. Die PyTorch-Threads werden auf die Prozesse aufgeteilt; mit
+ * {@code --numa-nodes K} läuft Rank i per {@code numactl} auf Knoten {@code i % K} (CPU und Speicher).
+ * Alle übrigen Argumente gehen unverändert an jeden Rank. Für mehrere Hosts {@link CNNPipeline} direkt mit
+ * {@code --dist-world/--dist-rank/--dist-master} auf jedem Knoten starten.
+ */
+public class DistributedLauncher {
+    private static final Logger log = LoggerFactory.getLogger(DistributedLauncher.class);
+
+    public static void main(String[] argv) throws Exception {
+        int nproc = 2;
+        int numaNodes = 0;
+        List<String> passThrough = new ArrayList<>();
+        for (int i = 0; i < argv.length; i++) {
+            switch (argv[i]) {
+                case "--nproc" -> nproc = Integer.parseInt(argv[++i]);
+                case "--numa-nodes" -> numaNodes = Integer.parseInt(argv[++i]);
+                default -> passThrough.add(argv[i]);
+            }
+        }
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / nproc);
+        Path java = Paths.get(System.getProperty("java.home"), "bin", "java");
+
+        List<Process> procs = new ArrayList<>();
+        for (int rank = 0; rank < nproc; rank++) {
+            List<String> cmd = new ArrayList<>();
+            if (numaNodes > 0) {
+                int node = rank % numaNodes;
+                cmd.addAll(List.of("numactl", "--cpunodebind=" + node, "--membind=" + node));
+            }
+            cmd.addAll(List.of(java.toString(),
+                    "-Dai.djl.pytorch.num_threads=" + threads,
+                    "-Dai.djl.pytorch.num_interop_threads=1",
+                    "-cp", System.getProperty("java.class.path"),
+                    CNNPipeline.class.getName()));
+            cmd.addAll(passThrough);
+            cmd.addAll(List.of("--dist-world", String.valueOf(nproc), "--dist-rank", String.valueOf(rank)));
+            procs.add(new ProcessBuilder(cmd).inheritIO().start());
+        }
+        log.info("Launched {} ranks with {} engine threads each", nproc, threads);
+
+        int exit = 0;
+        for (int rank = 0; rank < nproc; rank++) {
+            int code = procs.get(rank).waitFor();
+            if (code != 0 && exit == 0) {
+                exit = code;
+                log.error("Rank {} exited with {}, stopping the others", rank, code);
+                procs.forEach(Process::destroy);
+            }
+        }
+        System.exit(exit);
+    }
+}
@@ -0,0 +1,41 @@
+package de.djl.classification;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Patience-basiertes Early Stopping auf {@code valLoss} oder {@code valAcc}: bricht ab, wenn sich der
+ * überwachte Wert {@code patience} Epochen lang nicht um mehr als {@code minDelta} verbessert hat.
+ */
+public class EarlyStopping implements TrainingScheduler {
+
+    private final String monitor;
+    private final int patience;
+    private final double minDelta;
+
+    public EarlyStopping(String monitor, int patience, double minDelta) {
+        this.monitor = monitor == null ? "valLoss" : monitor;
+        if (!"valLoss".equals(this.monitor) && !"valAcc".equals(this.monitor)) {
+            throw new IllegalArgumentException("Unknown early-stopping monitor: " + monitor + " (valLoss|valAcc)");
+        }
+        this.patience = Math.max(1, patience);
+        this.minDelta = Math.max(0.0, minDelta);
+    }
+
+    @Override
+    public boolean shouldStop(int epoch, ClassificationModel.History history) {
+        boolean lowerIsBetter = "valLoss".equals(monitor);
+        List<Double> values = lowerIsBetter ? history.valLoss : history.valAcc;
+        int best = 0;
+        for (int i = 1; i < values.size(); i++) {
+            double delta = lowerIsBetter ? values.get(best) - values.get(i) : values.get(i) - values.get(best);
+            if (delta > minDelta) best = i;
+        }
+        return values.size() - 1 - best >= patience;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "EarlyStopping(%s, patience=%d, minDelta=%.4g)", monitor, patience, minDelta);
+    }
+}
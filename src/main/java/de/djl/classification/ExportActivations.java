@@ -1,5 +1,7 @@
 package de.djl.classification;
 
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.ImageFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -7,23 +9,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 public class ExportActivations {
-    private static final java.util.Set<String> ALLOWED_EXT =
-            new java.util.HashSet<>(java.util.Arrays.asList(
-                    "jpg","jpeg","png","bmp","gif","tif","tiff","webp"));
-
-    private static boolean hasAllowedExt(java.nio.file.Path p) {
-        String name = p.getFileName().toString();
-        int dot = name.lastIndexOf('.');
-        if (dot < 0 || dot == name.length() - 1) return false;
-        String ext = name.substring(dot + 1).toLowerCase(java.util.Locale.ROOT);
-        return ALLOWED_EXT.contains(ext);
-    }
-
     private static final Logger log = LoggerFactory.getLogger(ExportActivations.class);
 
     public static void main(String[] args) throws Exception {
@@ -46,24 +34,11 @@ public class ExportActivations {
         Settings settings = Settings.loadFromResources(cfg.settingsJson);
         Settings.Setting setting = settings.get(cfg.setting);
 
-        String run = DateTimeFormatter.ofPattern("yyyyMMdd-HHmm").format(LocalDateTime.now());
-        var pp = Preprocessing.prepareDatasets(
-                Paths.get(cfg.raw),
-                Paths.get(cfg.datasetsRoot),
-                cfg.valSplit,
-                cfg.seed,
-                "export-" + run,
-                cfg.imageSize,
-                cfg.grayscale
-        );
-
-        List<String> classes;
-        try (var s = Files.list(pp.valRoot())) {
-            classes = s.filter(Files::isDirectory)
-                    .map(p -> p.getFileName().toString())
-                    .sorted()
-                    .toList();
-        }
+        // Nur den Split planen (Header-Prüfung, gleicher Seed/Shuffle wie prepareDatasets); transformiert wird
+        // ausschließlich das gewählte Bild pro Klasse.
+        List<Preprocessing.ClassSplit> splits = Preprocessing.planSplits(
+                Paths.get(cfg.raw), cfg.valSplit, cfg.seed, cfg.preprocessWorkers);
+        List<String> classes = splits.stream().map(Preprocessing.ClassSplit::cls).toList();
 
         List<String> wantClasses = Arrays.stream(classesCsv.split(",")).map(String::trim).filter(classes::contains).toList();
         if (wantClasses.isEmpty()) throw new IllegalArgumentException("No matching classes under val: " + classesCsv + " (available: " + classes + ")");
@@ -78,28 +53,37 @@ public class ExportActivations {
         Path outRoot = Paths.get("output/activations/export");
         Files.createDirectories(outRoot);
 
-        for (String cls : wantClasses) {
-            Path sample = pickOneImage(pp.valRoot().resolve(cls));
+        List<Image> samples = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (Preprocessing.ClassSplit split : splits) {
+            if (!wantClasses.contains(split.cls())) continue;
+            Image sample = pickOneImage(split.val(), cfg);
             if (sample == null) {
-                log.warn("No images found under {} — skipping.", pp.valRoot().resolve(cls));
+                log.warn("No usable val image for class '{}' — skipping.", split.cls());
                 continue;
             }
-            for (String layer : layers) {
-                Path out = outRoot.resolve(cls + "_" + layer + ".png");
-                ActivationViewer.visualizeLayerFromImagePath(cm, sample, cfg.imageSize, layer, out, tile);
+            samples.add(sample);
+            names.add(split.cls());
+        }
+        if (!samples.isEmpty()) {
+            try (ActivationViewer.Session session = new ActivationViewer.Session(cm, cfg.imageSize)) {
+                session.export(samples, names, layers, outRoot, tile);
             }
         }
         log.info("Exported activations to {}", outRoot.toAbsolutePath());
         log.info("Open these PNGs directly in the presentation – no live run needed.");
     }
 
-    private static Path pickOneImage(Path classDir) throws IOException {
-        if (!Files.isDirectory(classDir)) return null;
-        try (var w = Files.walk(classDir)) {
-            return w.filter(Files::isRegularFile)
-                    .filter(ExportActivations::hasAllowedExt)
-                    .findFirst()
-                    .orElse(null);
+    /** Erstes Val-Bild der Klasse, das sich dekodieren lässt – transformiert im Speicher. */
+    private static Image pickOneImage(List<Path> valImages, PipelineConfig cfg) {
+        for (Path src : valImages) {
+            try {
+                return ImageFactory.getInstance().fromImage(
+                        Preprocessing.loadTransformed(src, cfg.imageSize, cfg.grayscale));
+            } catch (IOException | RuntimeException e) {
+                log.warn("Skip (transform failed): {} -> {}", src.getFileName(), e.toString());
+            }
         }
+        return null;
     }
 }
@@ -0,0 +1,260 @@
+package de.djl.classification;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.types.DataType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Kollektive Operationen für datenparalleles Training über mehrere JVMs (ein Host oder mehrere Knoten).
+ * Sterntopologie: Rank 0 nimmt die Verbindungen der übrigen Ranks an, summiert deren Beiträge in fester
+ * Rank-Reihenfolge und schickt das Ergebnis zurück – alle Ranks sehen damit bitgleiche Werte.
+ * Alle Ranks müssen dieselbe Folge von Aufrufen mit gleich großen Puffern ausführen.
+ */
+public final class GradientSync implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(GradientSync.class);
+    private static final int MAGIC = 0x47534e43;
+
+    private final int rank;
+    private final int world;
+    /** Rank 0: Verbindungen zu Rank 1..N-1 (Index = Rank - 1); sonst genau eine zu Rank 0. */
+    private final Socket[] sockets;
+    private final DataInputStream[] in;
+    private final DataOutputStream[] out;
+    private ByteBuffer scratch = ByteBuffer.allocate(0);
+    private float[] sum = new float[0];
+
+    private GradientSync(int rank, int world, Socket[] sockets, int soTimeout) throws IOException {
+        this.rank = rank;
+        this.world = world;
+        this.sockets = sockets;
+        this.in = new DataInputStream[sockets.length];
+        this.out = new DataOutputStream[sockets.length];
+        for (int i = 0; i < sockets.length; i++) {
+            sockets[i].setTcpNoDelay(true);
+            // ein hängender oder abgestürzter Rank soll die anderen nicht endlos blockieren
+            sockets[i].setSoTimeout(soTimeout);
+            in[i] = new DataInputStream(new BufferedInputStream(sockets[i].getInputStream(), 1 << 20));
+            out[i] = new DataOutputStream(new BufferedOutputStream(sockets[i].getOutputStream(), 1 << 20));
+        }
+    }
+
+    /**
+     * Baut die Verbindungen auf. Rank 0 lauscht auf {@code master:port} (nicht auf allen Interfaces – das
+     * Protokoll hat keine Authentifizierung; Default {@code 127.0.0.1} für einen Host); die anderen Ranks
+     * versuchen es bis {@code timeoutMillis} erneut, damit die Startreihenfolge der Prozesse egal ist.
+     * {@code timeoutMillis} begrenzt danach auch jedes einzelne Lesen.
+     */
+    public static GradientSync connect(int rank, int world, String master, int port, long timeoutMillis) throws IOException {
+        if (world < 1 || rank < 0 || rank >= world) {
+            throw new IllegalArgumentException("Invalid rank " + rank + " for world size " + world);
+        }
+        int soTimeout = (int) Math.min(Integer.MAX_VALUE, timeoutMillis);
+        if (rank == 0) {
+            Socket[] peers = new Socket[world - 1];
+            try (ServerSocket server = new ServerSocket()) {
+                server.setReuseAddress(true);
+                server.bind(new InetSocketAddress(InetAddress.getByName(master), port));
+                server.setSoTimeout(soTimeout);
+                for (int i = 0; i < world - 1; i++) {
+                    Socket s = server.accept();
+                    s.setSoTimeout(soTimeout);
+                    DataInputStream hello = new DataInputStream(s.getInputStream());
+                    int magic = hello.readInt(), peerRank = hello.readInt(), peerWorld = hello.readInt();
+                    if (magic != MAGIC || peerRank < 1 || peerRank >= world || peerWorld != world || peers[peerRank - 1] != null) {
+                        s.close();
+                        throw new IOException("Unexpected peer handshake: rank " + peerRank + ", world " + peerWorld);
+                    }
+                    peers[peerRank - 1] = s;
+                    log.info("Rank {} connected from {}", peerRank, s.getRemoteSocketAddress());
+                }
+            }
+            return new GradientSync(0, world, peers, soTimeout);
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            Socket s = new Socket();
+            try {
+                s.connect(new InetSocketAddress(master, port), 5_000);
+                DataOutputStream hello = new DataOutputStream(s.getOutputStream());
+                hello.writeInt(MAGIC);
+                hello.writeInt(rank);
+                hello.writeInt(world);
+                hello.flush();
+                log.info("Rank {} connected to {}:{}", rank, master, port);
+                return new GradientSync(rank, world, new Socket[]{s}, soTimeout);
+            } catch (ConnectException | NoRouteToHostException | SocketTimeoutException e) {
+                // Rank 0 bereitet evtl. noch das Dataset vor: bis zur Deadline erneut versuchen.
+                s.close();
+                if (System.currentTimeMillis() > deadline) throw e;
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while connecting to rank 0", ie);
+                }
+            }
+        }
+    }
+
+    public int rank() { return rank; }
+    public int world() { return world; }
+
+    /** Mittelt die Arrays (Transport in float32, auch für bf16-Gradienten) über alle Ranks und schreibt das Ergebnis in-place zurück. */
+    public void allReduceMean(List<NDArray> arrays) throws IOException {
+        if (world == 1) return;
+        int n = 0;
+        for (NDArray a : arrays) n += Math.toIntExact(a.size());
+        float[] local = flatten(arrays, n);
+        if (rank == 0) {
+            for (int p = 0; p < sockets.length; p++) {
+                FloatBuffer peer = readFloats(in[p], n);
+                for (int i = 0; i < n; i++) local[i] += peer.get(i);
+            }
+            float scale = 1f / world;
+            for (int i = 0; i < n; i++) local[i] *= scale;
+            for (DataOutputStream o : out) writeFloats(o, local, n);
+        } else {
+            writeFloats(out[0], local, n);
+            readFloats(in[0], n).get(local, 0, n);
+        }
+        unflatten(arrays, local);
+    }
+
+    /** Überschreibt die Arrays aller Ranks mit denen von Rank 0 (z. B. Startgewichte). */
+    public void broadcast(List<NDArray> arrays) throws IOException {
+        if (world == 1) return;
+        int n = 0;
+        for (NDArray a : arrays) n += Math.toIntExact(a.size());
+        if (rank == 0) {
+            float[] local = flatten(arrays, n);
+            for (DataOutputStream o : out) writeFloats(o, local, n);
+        } else {
+            float[] local = new float[n];
+            readFloats(in[0], n).get(local, 0, n);
+            unflatten(arrays, local);
+        }
+    }
+
+    /** Summiert kleine Skalarvektoren (z. B. Loss-Summen und Trefferzahlen) über alle Ranks. */
+    public double[] allReduceSum(double... values) throws IOException {
+        if (world == 1) return values;
+        double[] acc = values.clone();
+        if (rank == 0) {
+            for (DataInputStream i : in) {
+                for (int k = 0; k < acc.length; k++) acc[k] += i.readDouble();
+            }
+            for (DataOutputStream o : out) {
+                for (double v : acc) o.writeDouble(v);
+                o.flush();
+            }
+        } else {
+            for (double v : values) out[0].writeDouble(v);
+            out[0].flush();
+            for (int k = 0; k < acc.length; k++) acc[k] = in[0].readDouble();
+        }
+        return acc;
+    }
+
+    /** Verteilt einen String von Rank 0 (andere Ranks übergeben {@code null}). */
+    public String broadcast(String value) throws IOException {
+        if (world == 1) return value;
+        if (rank == 0) {
+            byte[] b = value.getBytes(StandardCharsets.UTF_8);
+            for (DataOutputStream o : out) {
+                o.writeInt(b.length);
+                o.write(b);
+                o.flush();
+            }
+            return value;
+        }
+        byte[] b = new byte[in[0].readInt()];
+        in[0].readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private float[] flatten(List<NDArray> arrays, int n) {
+        if (sum.length < n) sum = new float[n];
+        int off = 0;
+        for (NDArray a : arrays) {
+            float[] f;
+            if (a.getDataType() == DataType.FLOAT32) {
+                f = a.toFloatArray();
+            } else {
+                try (NDArray t = a.toType(DataType.FLOAT32, true)) {
+                    f = t.toFloatArray();
+                }
+            }
+            System.arraycopy(f, 0, sum, off, f.length);
+            off += f.length;
+        }
+        return sum;
+    }
+
+    private static void unflatten(List<NDArray> arrays, float[] values) {
+        int off = 0;
+        for (NDArray a : arrays) {
+            int len = Math.toIntExact(a.size());
+            float[] f = new float[len];
+            System.arraycopy(values, off, f, 0, len);
+            if (a.getDataType() == DataType.FLOAT32) {
+                a.set(f);
+            } else {
+                try (NDArray t = a.getManager().create(f, a.getShape()); NDArray c = t.toType(a.getDataType(), false)) {
+                    c.copyTo(a);
+                }
+            }
+            off += len;
+        }
+    }
+
+    private FloatBuffer readFloats(DataInputStream i, int n) throws IOException {
+        ByteBuffer b = scratch(n);
+        i.readFully(b.array(), 0, n * Float.BYTES);
+        return b.asFloatBuffer();
+    }
+
+    private void writeFloats(DataOutputStream o, float[] values, int n) throws IOException {
+        ByteBuffer b = scratch(n);
+        b.asFloatBuffer().put(values, 0, n);
+        o.write(b.array(), 0, n * Float.BYTES);
+        o.flush();
+    }
+
+    private ByteBuffer scratch(int floats) {
+        if (scratch.capacity() < floats * Float.BYTES) {
+            scratch = ByteBuffer.allocate(floats * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        scratch.clear();
+        return scratch;
+    }
+
+    @Override
+    public void close() {
+        for (Socket s : sockets) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                log.debug("Closing peer socket failed: {}", e.toString());
+            }
+        }
+    }
+}
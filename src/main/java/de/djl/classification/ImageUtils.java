@@ -2,16 +2,25 @@ package de.djl.classification;
 
 import ai.djl.ndarray.NDArray;
 import ai.djl.ndarray.index.NDIndex;
+import ai.djl.ndarray.types.DataType;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
 
 public class ImageUtils {
 
+    /**
+     * Rendert (C,H,W) bzw. das erste Sample von (N,C,H,W) als Kachel-Grid. Der Tensor wird genau einmal
+     * in die JVM kopiert; Min/Max, Normalisierung und bilineare Skalierung laufen pro Kanal parallel und
+     * schreiben direkt in den Byte-Raster des Grids.
+     */
     public static void saveFeatureGrid(NDArray feature, Path outFile, int tileSize) throws IOException {
         NDArray f = feature.squeeze();
         long[] sh = f.getShape().getShape();
@@ -22,82 +31,131 @@ public class ImageUtils {
         }
         if (sh.length != 3) throw new IOException("Expected (C,H,W), got " + f.getShape());
         int C = (int) sh[0], H = (int) sh[1], W = (int) sh[2];
+        float[] data = f.toType(DataType.FLOAT32, false).toFloatArray();
 
         int cols = (int) Math.ceil(Math.sqrt(C));
         int rows = (int) Math.ceil(C / (double) cols);
 
         BufferedImage grid = new BufferedImage(cols * tileSize, rows * tileSize, BufferedImage.TYPE_BYTE_GRAY);
-        Graphics2D g = grid.createGraphics();
-        g.setColor(Color.BLACK);
-        g.fillRect(0, 0, grid.getWidth(), grid.getHeight());
-
-        for (int c = 0; c < C; c++) {
-            NDArray ch = f.get(new NDIndex(c + ", :, :"));
-            float min = ch.min().getFloat();
-            float max = ch.max().getFloat();
-            float[] arr = ch.toFloatArray();
-
-            BufferedImage img = new BufferedImage(W, H, BufferedImage.TYPE_BYTE_GRAY);
-            for (int y = 0; y < H; y++) {
-                for (int x = 0; x < W; x++) {
-                    float v = arr[y * W + x];
-                    int gray = (max > min) ? (int) (255f * (v - min) / (max - min)) : 0;
-                    int rgb = (gray << 16) | (gray << 8) | gray;
-                    img.setRGB(x, y, rgb);
+        byte[] px = ((DataBufferByte) grid.getRaster().getDataBuffer()).getData();
+        int stride = grid.getWidth();
+
+        Axis ax = new Axis(W, tileSize);
+        Axis ay = new Axis(H, tileSize);
+        IntStream.range(0, C).parallel().forEach(c -> {
+            int base = c * H * W;
+            float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+            for (int i = base; i < base + H * W; i++) {
+                float v = data[i];
+                if (v < min) min = v;
+                if (v > max) max = v;
+            }
+            if (!(max > min)) return; // konstanter Kanal bleibt schwarz
+            float scale = 255f / (max - min);
+
+            int ox = (c % cols) * tileSize, oy = (c / cols) * tileSize;
+            for (int ty = 0; ty < tileSize; ty++) {
+                int r0 = base + ay.lo[ty] * W, r1 = base + ay.hi[ty] * W;
+                float wy = ay.frac[ty];
+                int dst = (oy + ty) * stride + ox;
+                for (int tx = 0; tx < tileSize; tx++) {
+                    int x0 = ax.lo[tx], x1 = ax.hi[tx];
+                    float wx = ax.frac[tx];
+                    float top = data[r0 + x0] + (data[r0 + x1] - data[r0 + x0]) * wx;
+                    float bot = data[r1 + x0] + (data[r1 + x1] - data[r1 + x0]) * wx;
+                    float v = top + (bot - top) * wy;
+                    px[dst + tx] = (byte) Math.min(255, (int) ((v - min) * scale));
                 }
             }
+        });
 
-            Image scaled = img.getScaledInstance(tileSize, tileSize, Image.SCALE_SMOOTH);
-            BufferedImage tile = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_BYTE_GRAY);
-            Graphics2D tg = tile.createGraphics();
-            tg.drawImage(scaled, 0, 0, null);
-            tg.dispose();
-
-            int r = c / cols, col = c % cols;
-            g.drawImage(tile, col * tileSize, r * tileSize, null);
-        }
-
-        g.dispose();
         Files.createDirectories(outFile.getParent());
         ImageIO.write(grid, "png", outFile.toFile());
     }
 
-    public static void saveConfusionMatrix2x2(int[][] cm, String[] labels, Path outFile) throws IOException {
-        int cell = 100; int pad = 60; int size = cell * 2 + pad * 2; // 2x2 matrix
+    /** Vorberechnete Stützstellen für bilineares Skalieren von {@code src} auf {@code dst} Pixel. */
+    private static final class Axis {
+        final int[] lo, hi;
+        final float[] frac;
+
+        Axis(int src, int dst) {
+            lo = new int[dst]; hi = new int[dst]; frac = new float[dst];
+            for (int i = 0; i < dst; i++) {
+                float pos = Math.max(0f, Math.min(src - 1f, (i + 0.5f) * src / dst - 0.5f));
+                lo[i] = (int) pos;
+                hi[i] = Math.min(src - 1, lo[i] + 1);
+                frac[i] = pos - lo[i];
+            }
+        }
+    }
+
+    /**
+     * Konfusionsmatrix beliebiger Größe (Zeile = wahre Klasse, Spalte = Vorhersage) als Heatmap; Zellfarbe nach
+     * Anteil an der Zeile. Zahlen und Klassennamen nur, solange die Zellen groß genug sind.
+     */
+    public static void saveConfusionMatrix(int[][] cm, List<String> labels, Path outFile) throws IOException {
+        int n = cm.length;
+        if (n == 0) return;
+        int cell = Math.max(4, Math.min(100, 800 / n));
+        boolean showLabels = cell >= 14;
+        int pad = showLabels ? Math.min(120, 60 + 4 * longest(labels)) : 40;
+        int size = cell * n + pad * 2;
         BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
         Graphics2D g = img.createGraphics();
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         g.setColor(Color.WHITE); g.fillRect(0, 0, size, size);
 
-        g.setColor(Color.GRAY);
-        for (int i=0;i<=2;i++) {
-            g.drawLine(pad, pad + i*cell, pad + 2*cell, pad + i*cell);
-            g.drawLine(pad + i*cell, pad, pad + i*cell, pad + 2*cell);
+        for (int r = 0; r < n; r++) {
+            long rowSum = 0;
+            for (int v : cm[r]) rowSum += v;
+            for (int c = 0; c < n; c++) {
+                float share = rowSum == 0 ? 0f : (float) cm[r][c] / rowSum;
+                int shade = 255 - Math.round(share * 200);
+                g.setColor(new Color(shade, shade, 255));
+                g.fillRect(pad + c * cell, pad + r * cell, cell, cell);
+            }
         }
 
-        g.setColor(Color.BLACK);
-        g.setFont(g.getFont().deriveFont(Font.BOLD, 20f));
-        for (int r=0; r<2; r++) {
-            for (int c=0; c<2; c++) {
-                String txt = String.valueOf(cm[r][c]);
-                int x = pad + c*cell + cell/2; int y = pad + r*cell + cell/2;
-                drawCentered(g, txt, x, y);
+        if (cell >= 20) {
+            g.setColor(Color.GRAY);
+            for (int i = 0; i <= n; i++) {
+                g.drawLine(pad, pad + i*cell, pad + n*cell, pad + i*cell);
+                g.drawLine(pad + i*cell, pad, pad + i*cell, pad + n*cell);
             }
         }
 
+        if (cell >= 28) {
+            g.setColor(Color.BLACK);
+            g.setFont(g.getFont().deriveFont(Font.BOLD, Math.min(20f, cell / 3f)));
+            for (int r = 0; r < n; r++) {
+                for (int c = 0; c < n; c++) {
+                    drawCentered(g, String.valueOf(cm[r][c]), pad + c*cell + cell/2, pad + r*cell + cell/2);
+                }
+            }
+        }
+
+        g.setColor(Color.BLACK);
         g.setFont(g.getFont().deriveFont(Font.PLAIN, 16f));
-        drawCentered(g, "Pred", pad + cell, pad - 30);
-        drawCentered(g, "True", pad - 35, pad + cell);
-        drawCentered(g, labels[0], pad + cell/2, pad + 2*cell + 20);
-        drawCentered(g, labels[1], pad + 3*cell/2, pad + 2*cell + 20);
-        drawCentered(g, labels[0], pad - 20, pad + cell/2);
-        drawCentered(g, labels[1], pad - 20, pad + 3*cell/2);
+        drawCentered(g, "Pred", pad + n*cell/2, pad / 2 - 10);
+        drawCentered(g, "True", pad / 2 - 10, pad / 2 + 10);
+        if (showLabels) {
+            g.setFont(g.getFont().deriveFont(Font.PLAIN, Math.min(16f, cell * 0.6f)));
+            for (int i = 0; i < n; i++) {
+                String label = i < labels.size() ? labels.get(i) : String.valueOf(i);
+                drawCentered(g, label, pad + i*cell + cell/2, pad + n*cell + 20);
+                drawCentered(g, label, pad / 2, pad + i*cell + cell/2);
+            }
+        }
 
         g.dispose();
         Files.createDirectories(outFile.getParent());
         ImageIO.write(img, "png", outFile.toFile());
     }
 
+    private static int longest(List<String> labels) {
+        return labels.stream().mapToInt(String::length).max().orElse(0);
+    }
+
     public static void saveVectorStripe(NDArray vec, Path outFile, int height) throws IOException {
         NDArray v = vec.squeeze();
         long[] sh = v.getShape().getShape();
@@ -113,22 +171,18 @@ public class ImageUtils {
             throw new IOException("saveVectorStripe expects 1D/2D, got " + v.getShape());
         }
 
-        float min = v.min().getFloat();
-        float max = v.max().getFloat();
-        float[] arr = v.toFloatArray();
+        float[] arr = v.toType(DataType.FLOAT32, false).toFloatArray();
+        float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+        for (float x : arr) {
+            if (x < min) min = x;
+            if (x > max) max = x;
+        }
 
         BufferedImage img = new BufferedImage(W, height, BufferedImage.TYPE_BYTE_GRAY);
-        for (int x = 0; x < W; x++) {
-            int gray;
-            if (max > min) {
-                gray = (int) (255f * (arr[x] - min) / (max - min));
-            } else {
-                gray = 0;
-            }
-            int rgb = (gray << 16) | (gray << 8) | gray;
-            for (int y = 0; y < height; y++) {
-                img.setRGB(x, y, rgb);
-            }
+        byte[] px = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+        if (max > min) {
+            for (int x = 0; x < W; x++) px[x] = (byte) (int) (255f * (arr[x] - min) / (max - min));
+            for (int y = 1; y < height; y++) System.arraycopy(px, 0, px, y * W, W);
         }
         Files.createDirectories(outFile.getParent());
         ImageIO.write(img, "png", outFile.toFile());
@@ -0,0 +1,200 @@
+package de.djl.classification;
+
+import ai.djl.inference.Predictor;
+import ai.djl.modality.Classifications;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.ImageFactory;
+import ai.djl.modality.cv.transform.Normalize;
+import ai.djl.modality.cv.transform.Resize;
+import ai.djl.modality.cv.transform.ToTensor;
+import ai.djl.modality.cv.translator.ImageClassificationTranslator;
+import ai.djl.translate.Translator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lokaler HTTP-Server für ein mit {@link ClassificationModel#save} gespeichertes Modell.
+ * {@code POST /predict} (Body = Bilddatei) liefert Top-k als JSON, {@code GET /health} Status und Zähler.
+ * Gleichzeitige Anfragen werden zu Micro-Batches zusammengefasst (max. {@code --max-batch} Bilder,
+ * max. {@code --max-wait-ms} Wartezeit), HTTP-I/O läuft auf virtuellen Threads.
+ */
+public class InferenceServer {
+    private static final Logger log = LoggerFactory.getLogger(InferenceServer.class);
+
+    public static void main(String[] args) throws Exception {
+        Path modelDir = null;
+        String settingName = null;
+        String settingsJson = "settings.json";
+        int port = 8080;
+        int imageSize = ClassificationModel.DEFAULT_IMAGE_SIZE;
+        int maxBatch = 32;
+        long maxWaitMs = 5;
+        int workers = 1;
+        int topK = 5;
+        String precision = "fp32";
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--model" -> modelDir = Paths.get(args[++i]);
+                case "--setting" -> settingName = args[++i];
+                case "--settings-json" -> settingsJson = args[++i];
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--img" -> imageSize = Integer.parseInt(args[++i]);
+                case "--max-batch" -> maxBatch = Integer.parseInt(args[++i]);
+                case "--max-wait-ms" -> maxWaitMs = Long.parseLong(args[++i]);
+                case "--workers" -> workers = Integer.parseInt(args[++i]);
+                case "--topk" -> topK = Integer.parseInt(args[++i]);
+                case "--precision" -> precision = args[++i];
+                default -> { }
+            }
+        }
+        if (modelDir == null) throw new IllegalArgumentException("--model <dir> is required (output/models/<setting>-<timestamp>)");
+        if (settingName == null) settingName = ClassificationModel.settingNameOf(modelDir);
+
+        List<String> synset = Files.readAllLines(modelDir.resolve("synset.txt"));
+        Settings.Setting setting = Settings.loadFromResources(settingsJson).get(settingName);
+        ClassificationModel cm = Files.exists(modelDir.resolve(Quantizer.INFO_FILE))
+                ? Quantizer.load(modelDir, setting)
+                : ClassificationModel.load(modelDir, setting, synset.size());
+        MixedPrecision.forInference(cm.getModel(), MixedPrecision.parse(precision));
+
+        Translator<Image, Classifications> translator = ImageClassificationTranslator.builder()
+                .addTransform(new Resize(imageSize, imageSize))
+                .addTransform(new ToTensor())
+                .addTransform(new Normalize(CNNPipeline.NORM_MEAN, CNNPipeline.NORM_STD))
+                .optSynset(synset)
+                .optApplySoftmax(true)
+                .build();
+
+        MicroBatcher batcher = new MicroBatcher(cm, translator, maxBatch, TimeUnit.MILLISECONDS.toNanos(maxWaitMs), workers);
+        ObjectMapper om = new ObjectMapper();
+        final int k = topK;
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/health", ex -> {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("status", "ok");
+            body.put("requests", batcher.requests.get());
+            body.put("batches", batcher.batches.get());
+            respond(ex, 200, om.writeValueAsBytes(body));
+        });
+        server.createContext("/predict", ex -> {
+            if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) {
+                respond(ex, 405, om.writeValueAsBytes(Map.of("error", "POST an image")));
+                return;
+            }
+            Image img;
+            try {
+                img = ImageFactory.getInstance().fromInputStream(ex.getRequestBody());
+            } catch (IOException | RuntimeException e) {
+                respond(ex, 400, om.writeValueAsBytes(Map.of("error", "unreadable image: " + e.getMessage())));
+                return;
+            }
+            try {
+                Classifications c = batcher.submit(img).get(30, TimeUnit.SECONDS);
+                List<Map<String, Object>> top = new ArrayList<>();
+                for (Classifications.Classification cl : c.topK(k)) {
+                    top.add(Map.of("class", cl.getClassName(), "probability", cl.getProbability()));
+                }
+                respond(ex, 200, om.writeValueAsBytes(Map.of("topK", top)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                respond(ex, 503, om.writeValueAsBytes(Map.of("error", "interrupted")));
+            } catch (ExecutionException | TimeoutException e) {
+                log.warn("Prediction failed: {}", e.toString());
+                respond(ex, 500, om.writeValueAsBytes(Map.of("error", String.valueOf(e.getMessage()))));
+            }
+        });
+        server.start();
+        log.info("Serving {} ({} classes) on http://{}:{}/predict (max-batch={}, max-wait={}ms, workers={})",
+                modelDir.getFileName(), synset.size(), InetAddress.getLoopbackAddress().getHostAddress(), port,
+                maxBatch, maxWaitMs, workers);
+    }
+
+    private static void respond(HttpExchange ex, int status, byte[] body) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, body.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    /**
+     * Sammelt Anfragen in einer Queue; jeder Worker nimmt die erste wartende Anfrage und füllt den Batch,
+     * bis {@code maxBatch} erreicht oder {@code maxWaitNanos} seit der ersten Anfrage verstrichen sind.
+     */
+    static final class MicroBatcher {
+        private record Pending(Image image, CompletableFuture<Classifications> result) { }
+
+        private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+        private final int maxBatch;
+        private final long maxWaitNanos;
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong batches = new AtomicLong();
+
+        MicroBatcher(ClassificationModel cm, Translator<Image, Classifications> translator,
+                     int maxBatch, long maxWaitNanos, int workers) {
+            this.maxBatch = Math.max(1, maxBatch);
+            this.maxWaitNanos = Math.max(0, maxWaitNanos);
+            for (int i = 0; i < Math.max(1, workers); i++) {
+                Thread t = new Thread(() -> loop(cm.getModel().newPredictor(translator)), "micro-batcher-" + i);
+                t.setDaemon(true);
+                t.start();
+            }
+        }
+
+        CompletableFuture<Classifications> submit(Image image) {
+            Pending p = new Pending(image, new CompletableFuture<>());
+            requests.incrementAndGet();
+            queue.add(p);
+            return p.result();
+        }
+
+        private void loop(Predictor<Image, Classifications> predictor) {
+            try (predictor) {
+                List<Pending> batch = new ArrayList<>(maxBatch);
+                while (!Thread.currentThread().isInterrupted()) {
+                    batch.add(queue.take());
+                    long deadline = System.nanoTime() + maxWaitNanos;
+                    while (batch.size() < maxBatch) {
+                        long left = deadline - System.nanoTime();
+                        Pending next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : queue.poll();
+                        if (next == null) break;
+                        batch.add(next);
+                    }
+                    run(predictor, batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void run(Predictor<Image, Classifications> predictor, List<Pending> batch) {
+            List<Image> images = new ArrayList<>(batch.size());
+            for (Pending p : batch) images.add(p.image());
+            try {
+                List<Classifications> out = predictor.batchPredict(images);
+                for (int i = 0; i < batch.size(); i++) batch.get(i).result().complete(out.get(i));
+            } catch (Exception e) {
+                for (Pending p : batch) p.result().completeExceptionally(e);
+            }
+            batches.incrementAndGet();
+        }
+    }
+}
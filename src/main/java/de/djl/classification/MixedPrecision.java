@@ -0,0 +1,200 @@
+package de.djl.classification;
+
+import ai.djl.MalformedModelException;
+import ai.djl.Model;
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.types.DataType;
+import ai.djl.nn.Block;
+import ai.djl.nn.LambdaBlock;
+import ai.djl.nn.Parameter;
+import ai.djl.nn.SequentialBlock;
+import ai.djl.nn.SymbolBlock;
+import ai.djl.training.optimizer.Optimizer;
+import ai.djl.util.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reduzierte Rechengenauigkeit (bfloat16) auf der PyTorch-CPU-Engine: Parameter und Aktivierungen in bf16,
+ * Master-Gewichte und Optimizer-Zustand in float32, Logits/Softmax/Loss in float32.
+ */
+final class MixedPrecision {
+    private static final Logger log = LoggerFactory.getLogger(MixedPrecision.class);
+
+    private MixedPrecision() { }
+
+    /** {@code fp32} (Standard) oder {@code bf16}. */
+    static DataType parse(String precision) {
+        String p = precision == null ? "fp32" : precision.toLowerCase(Locale.ROOT);
+        return switch (p) {
+            case "fp32", "float32" -> DataType.FLOAT32;
+            case "bf16", "bfloat16" -> DataType.BFLOAT16;
+            case "fp16", "float16" -> throw new IllegalArgumentException(
+                    "fp16 is not supported: the PyTorch CPU conv kernels have no half kernels and fp16 would need loss scaling; use bf16");
+            default -> throw new IllegalArgumentException("Unknown precision: " + precision + " (fp32|bf16)");
+        };
+    }
+
+    /**
+     * Castet alle Parameter von {@code block}; trainierbare behalten ihren Gradienten-Status.
+     * {@code false}, wenn der Block keine Casts unterstützt (TorchScript/{@link SymbolBlock}) – er bleibt dann
+     * unverändert. {@code Block.cast} ist in DJL 0.33 nicht implementiert, daher pro Parameter.
+     */
+    static boolean cast(Block block, DataType type) {
+        if (block instanceof SymbolBlock || containsSymbolBlock(block)) {
+            log.warn("Block {} cannot be cast to {}, staying in float32", block.getClass().getSimpleName(), type);
+            return false;
+        }
+        for (Pair<String, Parameter> p : block.getParameters()) {
+            Parameter param = p.getValue();
+            if (!param.isInitialized() || param.getArray().getDataType() == type) continue;
+            try (NDArray cast = param.getArray().toType(type, true)) {
+                replaceArray(param, cast);
+            }
+            if (param.requiresGradient()) param.getArray().setRequiresGradient(true);
+        }
+        return true;
+    }
+
+    private static boolean containsSymbolBlock(Block block) {
+        for (Pair<String, Block> child : block.getChildren()) {
+            if (child.getValue() instanceof SymbolBlock || containsSymbolBlock(child.getValue())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Ersetzt das Array eines initialisierten Parameters durch eine Kopie von {@code value} (auch mit anderem
+     * Datentyp). {@code Parameter.setArray} lehnt initialisierte Parameter ab; {@code Parameter.load} übernimmt
+     * dagegen Array und Shape aus dem Stream – daher der Umweg über dessen Format.
+     */
+    static void replaceArray(Parameter param, NDArray value) {
+        NDArray old = param.getArray();
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(bos);
+            dos.writeChar('P');
+            dos.writeByte(1);
+            dos.writeUTF(param.getName());
+            dos.write(value.encode());
+            dos.flush();
+            param.load(old.getManager(), new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+        } catch (IOException | MalformedModelException e) {
+            throw new IllegalStateException("Cannot replace parameter " + param.getName(), e);
+        }
+        old.close();
+    }
+
+    /**
+     * Inferenz in {@code type}: castet den Block und umschließt ihn mit Casts für Eingabe (nach {@code type})
+     * und Ausgabe (zurück nach float32), damit Translatoren unverändert float32 sehen.
+     */
+    static void forInference(Model model, DataType type) {
+        if (type == DataType.FLOAT32 || !cast(model.getBlock(), type)) return;
+        SequentialBlock wrapped = new SequentialBlock()
+                .add(castBlock(type))
+                .add(model.getBlock())
+                .add(castBlock(DataType.FLOAT32));
+        model.setBlock(wrapped);
+        log.info("Inference precision: {}", type);
+    }
+
+    static NDList castAll(NDList list, DataType type) {
+        NDList out = new NDList(list.size());
+        for (NDArray a : list) out.add(a.getDataType() == type ? a : a.toType(type, false));
+        return out;
+    }
+
+    private static Block castBlock(DataType type) {
+        return new LambdaBlock(list -> castAll(list, type), "cast_" + type.name().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Optimizer-Hülle für reduzierte Genauigkeit: führt zu jedem Parameter eine float32-Kopie (Master), auf die
+     * der eigentliche Optimizer den float32-Gradienten anwendet; danach wird der Master in den bf16-Parameter
+     * zurückgeschrieben. So gehen kleine Updates nicht in der bf16-Mantisse verloren.
+     */
+    static final class MasterWeightOptimizer extends Optimizer {
+        private final Optimizer delegate;
+        private final Map<String, NDArray> masters = new ConcurrentHashMap<>();
+
+        MasterWeightOptimizer(Optimizer delegate) {
+            super(new Builder());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void update(String parameterId, NDArray weight, NDArray grad) {
+            NDArray master = masters.computeIfAbsent(parameterId, k -> weight.toType(DataType.FLOAT32, true));
+            try (NDArray g = grad.toType(DataType.FLOAT32, true)) {
+                delegate.update(parameterId, master, g);
+            }
+            try (NDArray w = master.toType(weight.getDataType(), true)) {
+                w.copyTo(weight);
+            }
+        }
+
+        /**
+         * Schreibt die float32-Gewichte von {@code block} in {@code copy} (gleiche Struktur, initialisiert): die
+         * Master-Gewichte, wo vorhanden, sonst die hochgecasteten Parameter. {@code block} bleibt unverändert –
+         * seine Arrays liegen auch im ParameterStore des Trainers.
+         */
+        void copyFloat32(Block block, Block copy) {
+            Iterator<Pair<String, Parameter>> targets = copy.getParameters().iterator();
+            for (Pair<String, Parameter> p : block.getParameters()) {
+                Parameter target = targets.next().getValue();
+                Parameter param = p.getValue();
+                if (!param.isInitialized()) continue;
+                NDArray master = masters.get(param.getId());
+                if (master != null) {
+                    replaceArray(target, master);
+                } else {
+                    try (NDArray fp32 = param.getArray().toType(DataType.FLOAT32, true)) {
+                        replaceArray(target, fp32);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Setzt die Parameter von {@code block} wieder auf float32, und zwar auf die exakten Master-Gewichte
+         * (sonst blieben die auf bf16 gerundeten Werte stehen). Gibt die Master-Kopien frei.
+         */
+        void restoreFloat32(Block block) {
+            for (Pair<String, Parameter> p : block.getParameters()) {
+                Parameter param = p.getValue();
+                if (!param.isInitialized()) continue;
+                NDArray master = masters.remove(param.getId());
+                if (master != null) {
+                    replaceArray(param, master);
+                    master.close();
+                } else if (param.getArray().getDataType() != DataType.FLOAT32) {
+                    try (NDArray fp32 = param.getArray().toType(DataType.FLOAT32, true)) {
+                        replaceArray(param, fp32);
+                    }
+                }
+                if (param.requiresGradient()) param.getArray().setRequiresGradient(true);
+            }
+            masters.values().forEach(NDArray::close);
+            masters.clear();
+        }
+
+        private static final class Builder extends OptimizerBuilder<Builder> {
+            @Override
+            protected Builder self() {
+                return this;
+            }
+        }
+    }
+}
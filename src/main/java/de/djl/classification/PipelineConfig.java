@@ -6,7 +6,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Locale;
 
 public class PipelineConfig {
     public String setting = "baseline";
@@ -16,19 +21,98 @@ public class PipelineConfig {
     public String datasetsRoot = "data/datasets";
     public double valSplit = 0.2;
     public long seed = 42L;
+    public int preprocessWorkers = Runtime.getRuntime().availableProcessors();
+    public boolean preprocessCache = true;
+    /** Cache-Einträge, die so viele Tage von keinem Lauf verwendet wurden, werden entfernt (0 = nie). */
+    public int preprocessCacheMaxAgeDays = Preprocessing.CACHE_MAX_AGE_DAYS;
 
     public int epochs = 3;
+    /** Early Stopping: Epochen ohne Verbesserung bis zum Abbruch (0 = aus). */
+    public int earlyStopPatience = 0;
+    /** {@code valLoss} (kleiner ist besser) oder {@code valAcc} (größer ist besser). */
+    public String earlyStopMonitor = "valLoss";
+    public double earlyStopMinDelta = 0.0;
+    /** Checkpoint nach jeder N-ten Epoche (0 = aus). */
+    public int checkpointEveryEpochs = 0;
+    /** Zusätzlich spätestens alle M Minuten, auch mitten in der Epoche (0 = aus). */
+    public double checkpointEveryMinutes = 0;
+    /** Anzahl jüngster Checkpoints, die behalten werden; der beste nach Val-Accuracy bleibt immer. */
+    public int checkpointKeep = 3;
+    public String checkpointDir = "output/checkpoints";
+    /** {@code latest} oder ein Checkpoint-Verzeichnis, aus dem das Training fortgesetzt wird. */
+    public String resume;
     public int imageSize = ClassificationModel.DEFAULT_IMAGE_SIZE;
     public boolean grayscale = false;
     public boolean shuffleTrain = true;
+    public boolean tensorShards = false;
+    /** {@code fp32} oder {@code bf16} (Training und Zoo-Inferenz). */
+    public String precision = "fp32";
+    /** Phasen-Timer des Trainings als JSONL unter output/metrics/<setting>/ (siehe {@link TrainingInstrumentation}). */
+    public boolean instrument = true;
+    /** Prometheus-Endpunkt auf localhost (0 = aus); Rank r eines verteilten Laufs nutzt Port + r. */
+    public int metricsPort = 0;
+    /** PyTorch intra-op/inter-op Threads (0 = Engine-Standard bzw. Ergebnis des {@link ThreadTuner}). */
+    public int intraOpThreads = 0;
+    public int interOpThreads = 0;
+    /** Beim Start output/tuning/<host>-<setting>-<size>px.json übernehmen, falls vorhanden. */
+    public boolean threadTuning = true;
+    /** Hintergrund-Threads, die Batches vorbereiten (0 = synchron im Trainings-Thread). */
+    public int loaderWorkers = 2;
+    /** Maximale Anzahl vorab geladener Batches. */
+    public int prefetchDepth = 4;
+
+    /**
+     * Datenparalleles Training: Anzahl Prozesse (1 = aus), eigener Rank und Adresse von Rank 0 – Rank 0
+     * lauscht nur auf dieser Adresse.
+     */
+    public int distWorld = 1;
+    public int distRank = 0;
+    public String distMaster = "127.0.0.1";
+    public int distPort = 29500;
+    /** Wie lange Ranks > 0 auf Rank 0 warten (der vorher noch das Dataset vorbereitet); auch Lese-Timeout danach. */
+    public int distTimeoutSeconds = 1800;
 
     public boolean zoo = false;
     public String zooBackbone = "resnet";
+    /** Bildverzeichnis für den Durchsatz-Modus der Zoo-Inferenz (null = Demo mit wenigen Beispielbildern). */
+    public String zooInput;
+    /** Ergebnisdatei (.csv oder .jsonl); Standard: output/zoo/<backbone>/predictions.jsonl */
+    public String zooOutput;
+    public int zooBatchSize = 32;
+    public int zooThreads = 2;
+    public int zooDecodeThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    public int zooTopK = 5;
 
     public boolean saveActivations = false;
+    /** Taps zusätzlich alle N Trainingsschritte aufzeichnen (0 = nur erster Val-Batch der letzten Epoche). */
+    public int tapEverySteps = 0;
+    /** Anzahl Beispiele pro Batch, die ein Tap festhält. */
+    public int tapSamples = 1;
 
     public List<String> vizLayers;
 
+    /**
+     * Name des Dataset-Verzeichnisses unter {@link #datasetsRoot}. Mit Cache stabil pro Konfiguration
+     * (Wiederverwendung statt neuem Baum je Lauf), ohne Cache wie bisher ein Zeitstempel.
+     */
+    public String datasetRunName(String prefix) {
+        if (!preprocessCache) {
+            return prefix + DateTimeFormatter.ofPattern("yyyyMMdd-HHmm").format(LocalDateTime.now());
+        }
+        return String.format(Locale.ROOT, "%s%dpx-%s-seed%d-val%s",
+                prefix, imageSize, grayscale ? "gray" : "rgb", seed, valSplit);
+    }
+
+    /** Checkpoints aktiv (periodisch oder zum Fortsetzen)? */
+    public boolean checkpointing() {
+        return checkpointEveryEpochs > 0 || checkpointEveryMinutes > 0 || resume != null;
+    }
+
+    /** Gemeinsamer Bild-Cache aller Läufe oder {@code null}, wenn deaktiviert. */
+    public Path cacheRoot() {
+        return preprocessCache ? Paths.get(datasetsRoot).resolve("cache") : null;
+    }
+
     public static PipelineConfig loadFromResources(String resource) {
         try (InputStream is = PipelineConfig.class.getClassLoader().getResourceAsStream(resource)) {
             if (is == null) return new PipelineConfig();
@@ -49,11 +133,46 @@ public class PipelineConfig {
                 case "--datasets-root" -> this.datasetsRoot = argv[++i];
                 case "--val" -> this.valSplit = Double.parseDouble(argv[++i]);
                 case "--seed" -> this.seed = Long.parseLong(argv[++i]);
+                case "--prep-workers" -> this.preprocessWorkers = Integer.parseInt(argv[++i]);
+                case "--prep-cache" -> this.preprocessCache = Boolean.parseBoolean(argv[++i]);
+                case "--prep-cache-max-age" -> this.preprocessCacheMaxAgeDays = Integer.parseInt(argv[++i]);
                 case "--epochs" -> this.epochs = Integer.parseInt(argv[++i]);
+                case "--early-stop" -> this.earlyStopPatience = Integer.parseInt(argv[++i]);
+                case "--early-stop-monitor" -> this.earlyStopMonitor = argv[++i];
+                case "--early-stop-delta" -> this.earlyStopMinDelta = Double.parseDouble(argv[++i]);
+                case "--ckpt-every" -> this.checkpointEveryEpochs = Integer.parseInt(argv[++i]);
+                case "--ckpt-minutes" -> this.checkpointEveryMinutes = Double.parseDouble(argv[++i]);
+                case "--ckpt-keep" -> this.checkpointKeep = Integer.parseInt(argv[++i]);
+                case "--ckpt-dir" -> this.checkpointDir = argv[++i];
+                case "--resume" -> this.resume = argv[++i];
+                case "--dist-world" -> this.distWorld = Integer.parseInt(argv[++i]);
+                case "--dist-rank" -> this.distRank = Integer.parseInt(argv[++i]);
+                case "--dist-master" -> this.distMaster = argv[++i];
+                case "--dist-port" -> this.distPort = Integer.parseInt(argv[++i]);
+                case "--dist-timeout" -> this.distTimeoutSeconds = Integer.parseInt(argv[++i]);
                 case "--img" -> this.imageSize = Integer.parseInt(argv[++i]);
                 case "--grayscale" -> this.grayscale = Boolean.parseBoolean(argv[++i]);
                 case "--shuffle-train" -> this.shuffleTrain = Boolean.parseBoolean(argv[++i]);
+                case "--precision" -> this.precision = argv[++i];
+                case "--instrument" -> this.instrument = Boolean.parseBoolean(argv[++i]);
+                case "--metrics-port" -> this.metricsPort = Integer.parseInt(argv[++i]);
+                case "--shards" -> this.tensorShards = Boolean.parseBoolean(argv[++i]);
+                case "--intra-op-threads" -> this.intraOpThreads = Integer.parseInt(argv[++i]);
+                case "--inter-op-threads" -> this.interOpThreads = Integer.parseInt(argv[++i]);
+                case "--thread-tuning" -> this.threadTuning = Boolean.parseBoolean(argv[++i]);
+                case "--loader-workers" -> this.loaderWorkers = Integer.parseInt(argv[++i]);
+                case "--prefetch" -> this.prefetchDepth = Integer.parseInt(argv[++i]);
                 case "--save-activations" -> this.saveActivations = Boolean.parseBoolean(argv[++i]);
+                case "--zoo" -> this.zoo = Boolean.parseBoolean(argv[++i]);
+                case "--zooBackbone" -> this.zooBackbone = argv[++i];
+                case "--zoo-input" -> this.zooInput = argv[++i];
+                case "--zoo-output" -> this.zooOutput = argv[++i];
+                case "--zoo-batch" -> this.zooBatchSize = Integer.parseInt(argv[++i]);
+                case "--zoo-threads" -> this.zooThreads = Integer.parseInt(argv[++i]);
+                case "--zoo-decoders" -> this.zooDecodeThreads = Integer.parseInt(argv[++i]);
+                case "--zoo-topk" -> this.zooTopK = Integer.parseInt(argv[++i]);
+                case "--tap-every" -> this.tapEverySteps = Integer.parseInt(argv[++i]);
+                case "--tap-samples" -> this.tapSamples = Integer.parseInt(argv[++i]);
                 default -> { }
             }
         }
@@ -0,0 +1,136 @@
+package de.djl.classification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+
+/**
+ * Persistenter Cache für vorverarbeitete Bilder. Ein Eintrag ist über Quellpfad, Dateigröße, mtime,
+ * {@code targetSize} und {@code grayscaleAppearance} adressiert; geänderte Quellen bekommen automatisch
+ * einen neuen Schlüssel. Split-Verzeichnisse werden per Hardlink (Fallback: Kopie) aus dem Cache gebaut.
+ * Jede Verwendung setzt die mtime des Eintrags neu; {@link #evictUnusedFor} räumt lange ungenutzte Einträge ab.
+ */
+class PreprocessCache {
+    private static final Logger log = LoggerFactory.getLogger(PreprocessCache.class);
+
+    private final Path root;
+    private final int targetSize;
+    private final boolean grayscaleAppearance;
+
+    PreprocessCache(Path root, int targetSize, boolean grayscaleAppearance) {
+        this.root = root;
+        this.targetSize = targetSize;
+        this.grayscaleAppearance = grayscaleAppearance;
+    }
+
+    /** Parameter, die in jeden Schlüssel eingehen. */
+    String describe() {
+        return targetSize + "|" + grayscaleAppearance;
+    }
+
+    /** @return Pfad des Cache-Eintrags für {@code src} oder {@code null}, falls die Quelle nicht lesbar ist. */
+    Path entryFor(Path src) {
+        try {
+            BasicFileAttributes a = Files.readAttributes(src, BasicFileAttributes.class);
+            String id = src.toAbsolutePath().normalize() + "|" + a.size() + "|" + a.lastModifiedTime().toMillis()
+                    + "|" + targetSize + "|" + grayscaleAppearance;
+            String key = HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-1").digest(id.getBytes(StandardCharsets.UTF_8)));
+            return root.resolve(key.substring(0, 2)).resolve(key + ".jpg");
+        } catch (IOException | NoSuchAlgorithmException e) {
+            log.debug("No cache key for {}: {}", src, e.toString());
+            return null;
+        }
+    }
+
+    /** Markiert einen vorhandenen Eintrag als verwendet (mtime = jetzt); {@code false}, wenn er fehlt. */
+    boolean touch(Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.from(Instant.now()));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stellt sicher, dass {@code entry} existiert (dekodiert und transformiert {@code src} nur bei Cache-Miss) und
+     * verlinkt ihn nach {@code dst}. Nicht dekodierbare Quellen werden mit einem {@code .skip}-Marker vermerkt,
+     * damit sie in späteren Läufen nicht erneut dekodiert werden.
+     */
+    void materialize(Path src, Path entry, Path dst) throws IOException {
+        if (!Files.exists(entry)) {
+            Path skip = entry.resolveSibling(entry.getFileName() + ".skip");
+            if (Files.exists(skip)) throw new IOException("cached failure: " + Files.readString(skip));
+
+            BufferedImage out;
+            try {
+                out = Preprocessing.transform(Preprocessing.decode(src), targetSize, grayscaleAppearance);
+            } catch (IOException | RuntimeException e) {
+                Files.createDirectories(skip.getParent());
+                Files.writeString(skip, e.toString());
+                throw e;
+            }
+            store(entry, out);
+        } else {
+            touch(entry);
+        }
+        link(entry, dst);
+    }
+
+    /** Schreibt über eine Temp-Datei, damit parallele Läufe nie einen halben Eintrag sehen. */
+    private static void store(Path entry, BufferedImage out) throws IOException {
+        Files.createDirectories(entry.getParent());
+        Path tmp = Files.createTempFile(entry.getParent(), entry.getFileName().toString(), ".tmp");
+        try {
+            ImageIO.write(out, "jpg", tmp.toFile());
+            Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Löscht Einträge, {@code .skip}-Marker und liegengebliebene Temp-Dateien, deren mtime älter als {@code maxAge}
+     * ist. Bereits verlinkte Splits behalten ihre Hardlinks; fehlt ein Eintrag später, wird er neu transformiert.
+     */
+    void evictUnusedFor(Duration maxAge) throws IOException {
+        if (!Files.isDirectory(root)) return;
+        FileTime cutoff = FileTime.from(Instant.now().minus(maxAge));
+        int removed = 0;
+        try (var walk = Files.walk(root)) {
+            for (Path p : walk.filter(Files::isRegularFile).toList()) {
+                try {
+                    if (Files.getLastModifiedTime(p).compareTo(cutoff) < 0 && Files.deleteIfExists(p)) removed++;
+                } catch (IOException e) {
+                    log.debug("Cannot evict {}: {}", p, e.toString());
+                }
+            }
+        }
+        if (removed > 0) log.info("Evicted {} cache files unused for {} days from {}", removed, maxAge.toDays(), root);
+    }
+
+    private static void link(Path entry, Path dst) throws IOException {
+        Files.createDirectories(dst.getParent());
+        Files.deleteIfExists(dst);
+        try {
+            Files.createLink(dst, entry);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(entry, dst, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -8,15 +8,29 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorConvertOp;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
 public class Preprocessing {
@@ -29,6 +43,8 @@ public class Preprocessing {
         public int targetSize;
         public boolean grayscaleAppearance;
         public List<String> skipped = new ArrayList<>();
+        /** Fingerabdruck des Split-Plans (Quellen, Cache-Schlüssel, Zuordnung); nur mit Cache gesetzt. */
+        public String splitDigest;
     }
 
     public record PreparedPaths(Path outRoot, Path trainRoot, Path valRoot, Path metadataJson) { }
@@ -37,6 +53,9 @@ public class Preprocessing {
             ".jpg", ".jpeg", ".png", ".bmp", ".gif", ".tif", ".tiff", ".webp"
     );
 
+    /** Standard-Aufbewahrung ungenutzter Cache-Einträge in Tagen. */
+    static final int CACHE_MAX_AGE_DAYS = 30;
+
     public static PreparedPaths prepareDatasets(
             Path rawRoot,
             Path datasetsRoot,
@@ -45,16 +64,75 @@ public class Preprocessing {
             String runName,
             int targetSize,
             boolean grayscaleAppearance
+    ) throws IOException {
+        return prepareDatasets(rawRoot, datasetsRoot, valSplit, seed, runName, targetSize, grayscaleAppearance, 1);
+    }
+
+    /**
+     * Wie {@link #prepareDatasets(Path, Path, double, long, String, int, boolean)}, verteilt Prüfung und
+     * Transformation der Bilder aber auf {@code workers} Threads. Split, {@code metadata.json} und
+     * {@code skipped_images.txt} sind identisch zur sequentiellen Variante.
+     */
+    public static PreparedPaths prepareDatasets(
+            Path rawRoot,
+            Path datasetsRoot,
+            double valSplit,
+            long seed,
+            String runName,
+            int targetSize,
+            boolean grayscaleAppearance,
+            int workers
+    ) throws IOException {
+        return prepareDatasets(rawRoot, datasetsRoot, valSplit, seed, runName, targetSize, grayscaleAppearance, workers, null);
+    }
+
+    /**
+     * Wie {@link #prepareDatasets(Path, Path, double, long, String, int, boolean, int, Path, int)} mit
+     * {@link #CACHE_MAX_AGE_DAYS} Tagen Aufbewahrung für ungenutzte Cache-Einträge.
+     */
+    public static PreparedPaths prepareDatasets(
+            Path rawRoot,
+            Path datasetsRoot,
+            double valSplit,
+            long seed,
+            String runName,
+            int targetSize,
+            boolean grayscaleAppearance,
+            int workers,
+            Path cacheRoot
+    ) throws IOException {
+        return prepareDatasets(rawRoot, datasetsRoot, valSplit, seed, runName, targetSize, grayscaleAppearance, workers,
+                cacheRoot, CACHE_MAX_AGE_DAYS);
+    }
+
+    /**
+     * Wie {@link #prepareDatasets(Path, Path, double, long, String, int, boolean, int)}, nutzt aber einen
+     * persistenten Bild-Cache unter {@code cacheRoot} (siehe {@link PreprocessCache}): nur neue oder geänderte
+     * Rohbilder werden transformiert. Ein vorhandener Split mit gleichem Plan wird unverändert weiterverwendet;
+     * sonst wird er in einem Staging-Verzeichnis gebaut und erst fertig an seinen Platz verschoben, sodass parallele
+     * Läufe derselben Konfiguration nie einen halb gebauten oder gelöschten Split sehen. Cache-Einträge, die
+     * {@code cacheMaxAgeDays} Tage nicht verwendet wurden, werden danach entfernt (0 = nie) – auch wenn der Split
+     * wiederverwendet wird; dessen Einträge gelten dabei als verwendet.
+     * Mit {@code cacheRoot == null} wird wie bisher direkt in den Split geschrieben.
+     */
+    public static PreparedPaths prepareDatasets(
+            Path rawRoot,
+            Path datasetsRoot,
+            double valSplit,
+            long seed,
+            String runName,
+            int targetSize,
+            boolean grayscaleAppearance,
+            int workers,
+            Path cacheRoot,
+            int cacheMaxAgeDays
     ) throws IOException {
         if (!Files.isDirectory(rawRoot)) {
             throw new IOException("Raw root not found: " + rawRoot);
         }
 
         Path outRoot = datasetsRoot.resolve(runName);
-        Path trainRoot = outRoot.resolve("train");
-        Path valRoot = outRoot.resolve("val");
-        Files.createDirectories(trainRoot);
-        Files.createDirectories(valRoot);
+        PreprocessCache cache = cacheRoot != null ? new PreprocessCache(cacheRoot, targetSize, grayscaleAppearance) : null;
 
         List<Path> classDirs;
         try (var stream = Files.list(rawRoot)) {
@@ -63,65 +141,262 @@ public class Preprocessing {
         if (classDirs.isEmpty()) throw new IOException("No class folders under " + rawRoot);
 
         Random rnd = new Random(seed);
-        Map<String,Integer> trainCount = new LinkedHashMap<>();
-        Map<String,Integer> valCount = new LinkedHashMap<>();
-        List<String> skipped = new ArrayList<>();
+        List<ClassPlan> plans = new ArrayList<>(classDirs.size());
+        ExecutorService pool = workers > 1 ? Executors.newFixedThreadPool(workers) : null;
+        try {
+            for (Path clsDir : classDirs) {
+                Map<Path, Path> cacheEntries = new HashMap<>();
+                List<String> rejected = new ArrayList<>();
+                List<Path> images = validImages(pool, clsDir, cache, cacheEntries, rejected);
+                Collections.shuffle(images, rnd);
+                int nTrain = images.size() - valCount(images.size(), valSplit);
+                plans.add(new ClassPlan(clsDir.getFileName().toString(), images, nTrain, cacheEntries, rejected));
+            }
 
-        for (Path clsDir : classDirs) {
-            String cls = clsDir.getFileName().toString();
-            List<Path> images;
-            try (var walk = Files.walk(clsDir)) {
-                images = walk.filter(Files::isRegularFile)
-                        .filter(Preprocessing::hasAllowedExt)
-                        .filter(p -> isSupportedImage(p, skipped))
-                        .collect(Collectors.toList());
+            String digest = cache != null ? splitDigest(plans, cache) : null;
+            if (digest != null && digest.equals(splitDigestOf(outRoot))) {
+                log.info("Reusing prepared dataset at {}", outRoot.toAbsolutePath());
+            } else {
+                build(pool, plans, datasetsRoot, outRoot, targetSize, grayscaleAppearance, cache, digest);
+                log.info("Prepared dataset at {}", outRoot.toAbsolutePath());
             }
-            Collections.shuffle(images, rnd);
+        } finally {
+            if (pool != null) pool.shutdownNow();
+        }
+        if (cache != null && cacheMaxAgeDays > 0) cache.evictUnusedFor(Duration.ofDays(cacheMaxAgeDays));
+        return pathsOf(outRoot);
+    }
 
-            int n = images.size();
-            int nVal = Math.max(1, (int) Math.round(n * valSplit));
-            int nTrain = n - nVal;
+    /** Baut den Split (mit Cache im Staging-Verzeichnis, siehe {@link #publish}) und protokolliert Ausfälle. */
+    private static void build(ExecutorService pool, List<ClassPlan> plans, Path datasetsRoot, Path outRoot,
+                              int targetSize, boolean grayscaleAppearance, PreprocessCache cache, String digest)
+            throws IOException {
+        Path buildRoot = outRoot;
+        if (cache != null) {
+            Files.createDirectories(datasetsRoot);
+            buildRoot = Files.createTempDirectory(datasetsRoot, "." + outRoot.getFileName() + "-");
+        }
+        int skipped;
+        try {
+            skipped = write(pool, plans, buildRoot, targetSize, grayscaleAppearance, cache, digest);
+            if (cache != null && !publish(buildRoot, outRoot, digest)) {
+                log.info("Dataset at {} was prepared concurrently; using it", outRoot.toAbsolutePath());
+            }
+        } finally {
+            if (buildRoot != outRoot) deleteTree(buildRoot);
+        }
+        if (skipped > 0) {
+            log.warn("Skipped {} images. See {}", skipped, outRoot.resolve("skipped_images.txt").toAbsolutePath());
+        }
+    }
+
+    /** Geplanter Split einer Klasse: geshuffelte Bilder, davon die ersten {@code nTrain} ins Training. */
+    private record ClassPlan(String cls, List<Path> images, int nTrain, Map<Path, Path> cacheEntries,
+                             List<String> rejected) { }
+
+    private static PreparedPaths pathsOf(Path outRoot) {
+        return new PreparedPaths(outRoot, outRoot.resolve("train"), outRoot.resolve("val"), outRoot.resolve("metadata.json"));
+    }
+
+    /** Schreibt Split, {@code metadata.json} und {@code skipped_images.txt} nach {@code root}; liefert die Anzahl übersprungener Bilder. */
+    private static int write(ExecutorService pool, List<ClassPlan> plans, Path root, int targetSize,
+                              boolean grayscaleAppearance, PreprocessCache cache, String digest) throws IOException {
+        Path trainRoot = root.resolve("train");
+        Path valRoot = root.resolve("val");
+        Files.createDirectories(trainRoot);
+        Files.createDirectories(valRoot);
+
+        Map<String,Integer> trainCount = new LinkedHashMap<>();
+        Map<String,Integer> valCount = new LinkedHashMap<>();
+        List<String> skipped = new ArrayList<>();
+        for (ClassPlan plan : plans) {
+            String cls = plan.cls();
+            List<Path> images = plan.images();
+            int nTrain = plan.nTrain();
+            int nVal = images.size() - nTrain;
+            skipped.addAll(plan.rejected());
 
             Path tOut = trainRoot.resolve(cls); Files.createDirectories(tOut);
             Path vOut = valRoot.resolve(cls);  Files.createDirectories(vOut);
 
-            for (int i = 0; i < n; i++) {
+            String[] failed = runIndexed(pool, images.size(), i -> {
                 Path src = images.get(i);
                 Path dst = (i < nTrain ? tOut : vOut).resolve(src.getFileName().toString());
                 try {
-                    transformAndSave(src, dst, targetSize, grayscaleAppearance);
+                    Path entry = plan.cacheEntries().get(src);
+                    if (entry != null) {
+                        cache.materialize(src, entry, dst);
+                    } else {
+                        transformAndSave(src, dst, targetSize, grayscaleAppearance);
+                    }
+                    return null;
                 } catch (Exception ex) {
-                    skipped.add(src.toString());
                     log.warn("Skip (transform failed): {} -> {}", src.getFileName(), ex.toString());
+                    return src.toString();
                 }
+            });
+            // Erst beim Dekodieren erkannte Defekte: die Zuordnung der übrigen Bilder bleibt, gezählt wird, was im Split liegt.
+            int written = nTrain, writtenVal = nVal;
+            for (int i = 0; i < failed.length; i++) {
+                if (failed[i] == null) continue;
+                skipped.add(failed[i]);
+                if (i < nTrain) written--; else writtenVal--;
             }
-            trainCount.put(cls, nTrain);
-            valCount.put(cls, nVal);
-            log.info("Class '{}' -> train={}, val={}", cls, nTrain, nVal);
+
+            trainCount.put(cls, written);
+            valCount.put(cls, writtenVal);
+            log.info("Class '{}' -> train={}, val={}", cls, written, writtenVal);
         }
 
         Metadata md = new Metadata();
-        md.classes = classDirs.stream().map(p -> p.getFileName().toString()).collect(Collectors.toList());
+        md.classes = plans.stream().map(ClassPlan::cls).collect(Collectors.toList());
         md.trainCount = trainCount;
         md.valCount = valCount;
         md.targetSize = targetSize;
         md.grayscaleAppearance = grayscaleAppearance;
         md.skipped = skipped;
+        md.splitDigest = digest;
 
-        Path meta = outRoot.resolve("metadata.json");
         ObjectMapper om = new ObjectMapper();
         om.registerModule(new JavaTimeModule());
         om.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-        om.writerWithDefaultPrettyPrinter().writeValue(meta.toFile(), md);
+        om.writerWithDefaultPrettyPrinter().writeValue(root.resolve("metadata.json").toFile(), md);
+
+        if (!skipped.isEmpty()) Files.write(root.resolve("skipped_images.txt"), skipped);
+        return skipped.size();
+    }
+
+    /** Quellen, Cache-Schlüssel (enthalten Größe und mtime) und Train/Val-Zuordnung aller Klassen. */
+    private static String splitDigest(List<ClassPlan> plans, PreprocessCache cache) throws IOException {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(("v1|" + cache.describe()).getBytes(StandardCharsets.UTF_8));
+            for (ClassPlan plan : plans) {
+                md.update(("|" + plan.cls() + "|" + plan.nTrain() + "|" + plan.rejected()).getBytes(StandardCharsets.UTF_8));
+                for (Path src : plan.images()) {
+                    Path entry = plan.cacheEntries().get(src);
+                    md.update(("|" + src.toAbsolutePath().normalize() + ">" + (entry != null ? entry.getFileName() : "-"))
+                            .getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return HexFormat.of().formatHex(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
 
-        if (!skipped.isEmpty()) {
-            Path skipLog = outRoot.resolve("skipped_images.txt");
-            Files.write(skipLog, skipped);
-            log.warn("Skipped {} images. See {}", skipped.size(), skipLog.toAbsolutePath());
+    /** {@code splitDigest} aus {@code outRoot/metadata.json} oder {@code null}, falls nicht (lesbar) vorhanden. */
+    static String splitDigestOf(Path outRoot) {
+        Path meta = outRoot.resolve("metadata.json");
+        if (!Files.isRegularFile(meta)) return null;
+        try {
+            return new ObjectMapper().readValue(meta.toFile(), Metadata.class).splitDigest;
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable {}: {}", meta, e.toString());
+            return null;
         }
+    }
 
-        log.info("Prepared dataset at {}", outRoot.toAbsolutePath());
-        return new PreparedPaths(outRoot, trainRoot, valRoot, meta);
+    /**
+     * Verschiebt den fertigen Split {@code staging} nach {@code outRoot} und löscht einen veralteten Vorgänger.
+     * Ein Dateilock (prozessübergreifend) und der Klassen-Monitor (innerhalb der JVM) serialisieren parallele Läufe;
+     * hat einer davon denselben Plan schon veröffentlicht, bleibt dessen Split stehen.
+     *
+     * @return {@code false}, wenn {@code outRoot} bereits den Plan {@code digest} enthielt.
+     */
+    private static synchronized boolean publish(Path staging, Path outRoot, String digest) throws IOException {
+        Path lockFile = outRoot.resolveSibling(outRoot.getFileName() + ".lock");
+        // Das Lock gilt bis zum Schließen des Kanals.
+        try (FileChannel ch = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ch.lock();
+            if (digest.equals(splitDigestOf(outRoot))) return false;
+            Path old = null;
+            if (Files.exists(outRoot)) {
+                old = outRoot.resolveSibling("." + outRoot.getFileName() + "-old-" + System.nanoTime());
+                Files.move(outRoot, old, StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.move(staging, outRoot, StandardCopyOption.ATOMIC_MOVE);
+            if (old != null) deleteTree(old);
+            return true;
+        }
+    }
+
+    /** Split einer Klasse: Rohbild-Pfade in derselben Reihenfolge und Aufteilung wie {@link #prepareDatasets}. */
+    public record ClassSplit(String cls, List<Path> train, List<Path> val) { }
+
+    /**
+     * Berechnet den deterministischen Train/Val-Split wie {@link #prepareDatasets} (gleiche Header-Prüfung,
+     * gleicher Seed, gleiche Shuffle-Reihenfolge über alle Klassen), ohne Bilder zu dekodieren, zu transformieren
+     * oder zu schreiben; der Bild-Cache bleibt unberührt.
+     */
+    public static List<ClassSplit> planSplits(Path rawRoot, double valSplit, long seed, int workers) throws IOException {
+        if (!Files.isDirectory(rawRoot)) {
+            throw new IOException("Raw root not found: " + rawRoot);
+        }
+        List<Path> classDirs;
+        try (var stream = Files.list(rawRoot)) {
+            classDirs = stream.filter(Files::isDirectory).sorted().toList();
+        }
+        if (classDirs.isEmpty()) throw new IOException("No class folders under " + rawRoot);
+
+        Random rnd = new Random(seed);
+        List<ClassSplit> splits = new ArrayList<>();
+        ExecutorService pool = workers > 1 ? Executors.newFixedThreadPool(workers) : null;
+        try {
+            for (Path clsDir : classDirs) {
+                List<Path> images = validImages(pool, clsDir, null, null, new ArrayList<>());
+                Collections.shuffle(images, rnd);
+                int nTrain = Math.max(0, images.size() - valCount(images.size(), valSplit));
+                splits.add(new ClassSplit(clsDir.getFileName().toString(),
+                        List.copyOf(images.subList(0, nTrain)), List.copyOf(images.subList(nTrain, images.size()))));
+            }
+        } finally {
+            if (pool != null) pool.shutdownNow();
+        }
+        return splits;
+    }
+
+    /** Dekodiert und transformiert ein einzelnes Rohbild im Speicher (gleiche Transformation wie im Split). */
+    public static BufferedImage loadTransformed(Path src, int targetSize, boolean grayscaleAppearance) throws IOException {
+        return transform(decode(src), targetSize, grayscaleAppearance);
+    }
+
+    private static int valCount(int n, double valSplit) {
+        return Math.max(1, (int) Math.round(n * valSplit));
+    }
+
+    /**
+     * Alle verwendbaren Bilder einer Klasse in Walk-Reihenfolge. Abgelehnte Dateien landen in {@code skipped};
+     * mit Cache werden vorhandene Einträge ohne Header-Prüfung übernommen (und als verwendet markiert) und in
+     * {@code cacheEntries} vermerkt.
+     */
+    private static List<Path> validImages(ExecutorService pool, Path clsDir, PreprocessCache cache,
+                                          Map<Path, Path> cacheEntries, List<String> skipped) throws IOException {
+        List<Path> candidates;
+        try (var walk = Files.walk(clsDir)) {
+            candidates = walk.filter(Files::isRegularFile)
+                    .filter(Preprocessing::hasAllowedExt)
+                    .collect(Collectors.toList());
+        }
+        Path[] entries = new Path[candidates.size()];
+        String[] rejected = runIndexed(pool, candidates.size(), i -> {
+            Path src = candidates.get(i);
+            if (cache != null) {
+                entries[i] = cache.entryFor(src);
+                if (entries[i] != null && cache.touch(entries[i])) return null;
+            }
+            return checkImage(src);
+        });
+        List<Path> images = new ArrayList<>(candidates.size());
+        for (int i = 0; i < rejected.length; i++) {
+            if (rejected[i] != null) {
+                skipped.add(rejected[i]);
+                continue;
+            }
+            images.add(candidates.get(i));
+            if (entries[i] != null) cacheEntries.put(candidates.get(i), entries[i]);
+        }
+        return images;
     }
 
     private static boolean hasAllowedExt(Path p) {
@@ -130,33 +405,82 @@ public class Preprocessing {
         return false;
     }
 
-    private static boolean isSupportedImage(Path p, List<String> skipped) {
-        if (!hasAllowedExt(p)) return false;
-        String ct = null;
-        try { ct = Files.probeContentType(p); } catch (Exception ignore) {}
-        if (ct != null && !ct.startsWith("image/")) {
-            if (skipped != null) skipped.add(p + " [mime=" + ct + "]");
-            return false;
+    static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) return;
+        try (var walk = Files.walk(root)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
         }
-        return isReadableImage(p, skipped);
     }
 
-    private static boolean isReadableImage(Path p, List<String> skipped) {
+    /**
+     * Führt {@code task} für die Indizes {@code 0..n-1} aus (parallel, falls {@code pool != null}) und liefert
+     * die Ergebnisse in Indexreihenfolge – so bleibt die Skip-Liste unabhängig von der Thread-Anzahl.
+     */
+    private static String[] runIndexed(ExecutorService pool, int n, IntFunction<String> task) throws IOException {
+        String[] out = new String[n];
+        if (pool == null) {
+            for (int i = 0; i < n; i++) out[i] = task.apply(i);
+            return out;
+        }
+        List<Future<?>> futures = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            final int idx = i;
+            futures.add(pool.submit(() -> out[idx] = task.apply(idx)));
+        }
         try {
-            BufferedImage bi = ImageIO.read(p.toFile());
-            boolean ok = bi != null && bi.getWidth() > 1 && bi.getHeight() > 1;
-            if (!ok && skipped != null) skipped.add(p.toString());
-            return ok;
+            for (Future<?> f : futures) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Preprocessing interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Preprocessing worker failed", e.getCause());
+        }
+        return out;
+    }
+
+    /**
+     * Günstiger Vorab-Check: liest nur den Header (Format + Abmessungen) über einen {@link ImageReader},
+     * ohne die Pixeldaten zu dekodieren. Vollständig dekodiert wird genau einmal beim Bauen des Splits
+     * ({@link #transformAndSave} bzw. {@link PreprocessCache#materialize}); scheitert das, fehlt die Datei im
+     * Split, steht in {@code skipped_images.txt} und zählt nicht in {@code trainCount}/{@code valCount}.
+     *
+     * @return {@code null} wenn das Bild verwendbar ist, sonst der Eintrag für die Skip-Liste.
+     */
+    private static String checkImage(Path p) {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(p.toFile())) {
+            if (iis == null) return p.toString();
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) return p.toString();
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                return reader.getWidth(0) > 1 && reader.getHeight(0) > 1 ? null : p.toString();
+            } finally {
+                reader.dispose();
+            }
         } catch (Exception e) {
-            if (skipped != null) skipped.add(p.toString());
-            return false;
+            return p.toString();
         }
     }
 
-    private static void transformAndSave(Path src, Path dst, int targetSize, boolean grayscaleAppearance) throws IOException {
+    static void transformAndSave(Path src, Path dst, int targetSize, boolean grayscaleAppearance) throws IOException {
+        BufferedImage out = transform(decode(src), targetSize, grayscaleAppearance);
+        Files.createDirectories(dst.getParent());
+        ImageIO.write(out, "jpg", dst.toFile());
+    }
+
+    /** Dekodiert das Bild genau einmal und validiert dabei die Abmessungen. */
+    static BufferedImage decode(Path src) throws IOException {
         BufferedImage img = ImageIO.read(src.toFile());
         if (img == null) throw new IOException("unreadable image");
+        if (img.getWidth() <= 1 || img.getHeight() <= 1) {
+            throw new IOException("image too small: " + img.getWidth() + "x" + img.getHeight());
+        }
+        return img;
+    }
 
+    /** Letterbox auf {@code targetSize}² (schwarzer Rand), immer RGB; optional grau aussehend. */
+    static BufferedImage transform(BufferedImage img, int targetSize, boolean grayscaleAppearance) {
         BufferedImage scaled = Scalr.resize(img, Scalr.Method.QUALITY, Scalr.Mode.AUTOMATIC, targetSize, targetSize);
 
         BufferedImage canvasRgb = new BufferedImage(targetSize, targetSize, BufferedImage.TYPE_INT_RGB);
@@ -178,8 +502,6 @@ public class Preprocessing {
             g2.dispose();
             canvasRgb = backToRgb;
         }
-
-        Files.createDirectories(dst.getParent());
-        ImageIO.write(canvasRgb, "jpg", dst.toFile());
+        return canvasRgb;
     }
 }
@@ -0,0 +1,33 @@
+package de.djl.classification;
+
+import ai.djl.training.dataset.RandomAccessDataset;
+import ai.djl.training.dataset.Sampler;
+
+import java.util.Iterator;
+import java.util.SplittableRandom;
+import java.util.stream.LongStream;
+
+/**
+ * Mischt die Indizes mit einem eigenen Seed statt mit DJLs prozessweitem Zufallsgenerator – parallele
+ * Trainingsjobs beeinflussen ihre Reihenfolge so nicht gegenseitig, und ein Resume sieht dieselbe Reihenfolge.
+ */
+final class SeededShuffleSampler implements Sampler.SubSampler {
+    private final long seed;
+
+    SeededShuffleSampler(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public Iterator<Long> sample(RandomAccessDataset dataset) {
+        long[] idx = LongStream.range(0, dataset.size()).toArray();
+        SplittableRandom rnd = new SplittableRandom(seed);
+        for (int i = idx.length - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            long t = idx[i];
+            idx[i] = idx[j];
+            idx[j] = t;
+        }
+        return LongStream.of(idx).iterator();
+    }
+}
@@ -6,6 +6,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
 import java.util.*;
 
 public class Settings {
@@ -22,19 +23,58 @@ public class Settings {
         public int[] denseUnits;
         public String activation;
         public int batchSize;
+        /** Micro-Batches ({@link #batchSize}) pro Optimizer-Schritt; effektive Batchgröße = batchSize × accumulationSteps. */
+        public Integer accumulationSteps;
         public double dropout;
         public Double leakyAlpha;
 
+        /** Augmentierung des Train-Splits (null = keine), siehe {@link AugmentingBatchifier}. */
+        public Augmentation augmentation;
+
         public Integer baseChannels;
         public Integer maxChannels;
         public Boolean globalAvgPool;
 
+        public int accumulation() {
+            return accumulationSteps == null ? 1 : Math.max(1, accumulationSteps);
+        }
+
+        /** Tiefe Kopie unter neuem Namen (z. B. für Grid-Varianten im Sweep). */
+        public Setting copy(String newName) {
+            Setting c = new ObjectMapper().convertValue(this, Setting.class);
+            c.name = newName;
+            return c;
+        }
+
         @Override public String toString() {
             return String.format(Locale.ROOT,
-                    "%s conv=%d kernel=%s stride=%d pool=%s dense=%s act=%s opt=%s lr=%.4g bs=%d drop=%.2f base=%s max=%s gap=%s",
+                    "%s conv=%d kernel=%s stride=%d pool=%s dense=%s act=%s opt=%s lr=%.4g bs=%dx%d drop=%.2f base=%s max=%s gap=%s aug=%s",
                     name, convLayers, Arrays.toString(kernel), stride, Arrays.toString(maxPoolSize),
-                    Arrays.toString(denseUnits), activation, optimizer, learningRate, batchSize, dropout,
-                    baseChannels, maxChannels, globalAvgPool);
+                    Arrays.toString(denseUnits), activation, optimizer, learningRate, batchSize, accumulation(), dropout,
+                    baseChannels, maxChannels, globalAvgPool, augmentation == null ? "off" : augmentation);
+        }
+    }
+
+    /** Parameter für {@link AugmentingBatchifier}; 0 schaltet den jeweiligen Schritt ab. */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Augmentation implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /** Kleinster Flächenanteil des zufälligen Ausschnitts (1 = kein Zuschnitt). */
+        public double cropScaleMin = 0.5;
+        /** Ein Ausschnitt für den ganzen Batch statt pro Sample (ein Resize statt N, dafür schwächer). */
+        public boolean cropPerBatch;
+        public double flipProbability = 0.5;
+        /** Maximale relative Abweichung von Helligkeit, Kontrast und Sättigung. */
+        public double brightness = 0.2;
+        public double contrast = 0.2;
+        public double saturation = 0.2;
+        /** Eigener Seed; sonst der der Pipeline ({@code --seed}). */
+        public Long seed;
+
+        @Override public String toString() {
+            return String.format(Locale.ROOT, "crop>=%.2f%s flip=%.2f jitter=%.2f/%.2f/%.2f",
+                    cropScaleMin, cropPerBatch ? "/batch" : "", flipProbability, brightness, contrast, saturation);
         }
     }
 
@@ -44,6 +84,10 @@ public class Settings {
         for (Setting s : list) byName.put(s.name, s);
     }
 
+    public List<Setting> all() {
+        return List.copyOf(byName.values());
+    }
+
     public Setting get(String name) {
         Setting s = byName.get(name);
         if (s == null) throw new IllegalArgumentException("Unknown setting: " + name + " (available: " + byName.keySet() + ")");
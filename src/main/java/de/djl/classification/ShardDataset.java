@@ -0,0 +1,98 @@
+package de.djl.classification;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.training.dataset.RandomAccessDataset;
+import ai.djl.training.dataset.Record;
+import ai.djl.util.Progress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link RandomAccessDataset} über {@link TensorShards}: die Shards werden per {@link FileChannel#map}
+ * eingeblendet, ein Record ist nur ein Slice + uint8→float + Normalisierung – kein JPEG-Decode pro Epoche.
+ * Normalisiert wird über eine Tabelle pro Kanal (256 Werte) beim Kopieren, ohne Konstanten-NDArrays pro Record.
+ */
+public class ShardDataset extends RandomAccessDataset {
+
+    private final TensorShards.Header header;
+    private final List<MappedByteBuffer> shards = new ArrayList<>();
+    private final Shape shape;
+    private final int stride;
+    private final int pixels;
+    /** {@code (b / 255 - mean[c]) / std[c]} für jeden Kanal {@code c} und Bytewert {@code b}. */
+    private final float[][] normalized;
+    private final ThreadLocal<float[]> scratch;
+
+    protected ShardDataset(Builder builder) throws IOException {
+        super(builder);
+        this.header = TensorShards.readHeader(builder.directory);
+        this.shape = new Shape(header.channels, header.height, header.width);
+        this.stride = header.stride();
+        this.pixels = stride - 4;
+        this.normalized = new float[header.channels][256];
+        for (int c = 0; c < header.channels; c++) {
+            for (int b = 0; b < 256; b++) normalized[c][b] = (b / 255f - header.mean[c]) / header.std[c];
+        }
+        this.scratch = ThreadLocal.withInitial(() -> new float[pixels]);
+        for (String f : header.files) {
+            try (FileChannel ch = FileChannel.open(builder.directory.resolve(f), StandardOpenOption.READ)) {
+                shards.add(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+            }
+        }
+    }
+
+    public static Builder builder() { return new Builder(); }
+
+    public List<String> getClasses() { return header.classes; }
+
+    @Override
+    public Record get(NDManager manager, long index) {
+        int shard = (int) (index / header.recordsPerShard);
+        int offset = (int) (index % header.recordsPerShard) * stride;
+        ByteBuffer buf = shards.get(shard).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int label = buf.getInt(offset);
+
+        float[] values = scratch.get();
+        int plane = pixels / header.channels;
+        for (int c = 0, p = 0; c < header.channels; c++) {
+            float[] lut = normalized[c];
+            for (int end = p + plane; p < end; p++) values[p] = lut[buf.get(offset + 4 + p) & 0xFF];
+        }
+        NDArray x = manager.create(values, shape);
+        return new Record(new NDList(x), new NDList(manager.create((float) label)));
+    }
+
+    @Override
+    protected long availableSize() { return header.count; }
+
+    @Override
+    public void prepare(Progress progress) { }
+
+    public static final class Builder extends BaseBuilder<Builder> {
+        private Path directory;
+
+        @Override
+        protected Builder self() { return this; }
+
+        public Builder setDirectory(Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        public ShardDataset build() throws IOException {
+            if (directory == null) throw new IllegalArgumentException("Shard directory is required");
+            return new ShardDataset(this);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package de.djl.classification;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.NDScope;
+import ai.djl.training.optimizer.Optimizer;
+import ai.djl.training.tracker.Tracker;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Adam, SGD (Momentum 0.9) und RMSProp mit exportierbarem Zustand (Momente + Schrittzähler),
+ * damit Checkpoints das Training exakt fortsetzen können – DJLs eingebaute Optimizer halten diesen Zustand
+ * privat. Hyperparameter und Gradienten-Vorverarbeitung (rescaleGrad, clipGrad, Weight Decay) entsprechen den
+ * DJL-Buildern aus {@code ClassificationModel#makeOptimizer}; Adam und SGD rechnen dieselben Formeln wie DJLs
+ * PyTorch-Kernel, nur in anderer Operationsreihenfolge (Abweichungen im Rundungsbereich). RMSProp rechnet wie
+ * DJLs nicht-zentriertes {@code RmsProp} (rho 0.9, eps 1e-8; das Momentum des Builders wird dort nicht genutzt)
+ * {@code n = 0.9·n + 0.1·g²; w −= lr·g/sqrt(n+eps)}; die PyTorch-Engine hat keinen RMSProp-Kernel, daher nutzt
+ * {@code makeOptimizer} für RMSProp immer diese Klasse.
+ * Annahme: ein Device pro Parameter (wie überall in diesem Projekt).
+ */
+final class StatefulOptimizer extends Optimizer {
+
+    enum Kind { ADAM, SGD, RMSPROP }
+
+    private static final float BETA1 = 0.9f;
+    private static final float BETA2 = 0.999f;
+    private static final float MOMENTUM = 0.9f;
+    private static final float RHO = 0.9f;
+    private static final float EPS = 1e-8f;
+
+    private final Kind kind;
+    private final Tracker learningRate;
+    private final Map<String, NDArray[]> slots = new ConcurrentHashMap<>();
+    private final Map<String, Integer> steps = new ConcurrentHashMap<>();
+
+    StatefulOptimizer(Kind kind, Tracker learningRate) {
+        super(new Builder());
+        this.kind = kind;
+        this.learningRate = learningRate;
+    }
+
+    static StatefulOptimizer of(Settings.Setting setting) {
+        String opt = setting.optimizer == null ? "adam" : setting.optimizer.toLowerCase(Locale.ROOT);
+        Kind kind = switch (opt) {
+            case "sgd" -> Kind.SGD;
+            case "rmsprop" -> Kind.RMSPROP;
+            default -> Kind.ADAM;
+        };
+        return new StatefulOptimizer(kind, Tracker.fixed((float) setting.learningRate));
+    }
+
+    @Override
+    @SuppressWarnings("try") // NDScope gibt beim Schließen alle Zwischenergebnisse frei
+    public void update(String parameterId, NDArray weight, NDArray grad) {
+        int t = steps.merge(parameterId, 1, Integer::sum);
+        float lr = learningRate.getNewValue(t);
+        NDArray[] s = slots.computeIfAbsent(parameterId, k -> new NDArray[slotCount()]);
+        for (int i = 0; i < s.length; i++) {
+            // auch für unvollständig gesicherte Momente
+            if (s[i] == null) s[i] = weight.zerosLike();
+        }
+        try (NDScope ignored = new NDScope()) {
+            grad = preprocess(weight, grad);
+            switch (kind) {
+                case ADAM -> {
+                    s[0].muli(BETA1).addi(grad.mul(1 - BETA1));
+                    s[1].muli(BETA2).addi(grad.square().muli(1 - BETA2));
+                    float stepLr = (float) (lr * Math.sqrt(1 - Math.pow(BETA2, t)) / (1 - Math.pow(BETA1, t)));
+                    weight.subi(s[0].div(s[1].sqrt().addi(EPS)).muli(stepLr));
+                }
+                case SGD -> {
+                    s[0].muli(MOMENTUM).subi(grad.mul(lr));
+                    weight.addi(s[0]);
+                }
+                case RMSPROP -> {
+                    s[0].muli(RHO).addi(grad.square().muli(1 - RHO));
+                    weight.subi(grad.div(s[0].add(EPS).sqrt()).muli(lr));
+                }
+            }
+        }
+    }
+
+    private int slotCount() {
+        return kind == Kind.ADAM ? 2 : 1;
+    }
+
+    /** Wie DJLs Optimizer: skalieren, optional clippen, Weight Decay addieren (Defaults: 1, aus, 0). */
+    private NDArray preprocess(NDArray weight, NDArray grad) {
+        NDArray g = rescaleGrad == 1f ? grad : grad.mul(rescaleGrad);
+        if (clipGrad > 0) g = g.clip(-clipGrad, clipGrad);
+        float wd = getWeightDecay();
+        if (wd != 0f) g = g.add(weight.mul(wd));
+        return g;
+    }
+
+    /**
+     * Schrittzähler pro Parameter (für {@code state.json}). Parameter-IDs sind zufällige UUIDs pro Prozess,
+     * deshalb wird über {@code idToName} auf die stabilen Block-Pfade umgeschlüsselt.
+     */
+    Map<String, Integer> stepCounts(Map<String, String> idToName) {
+        Map<String, Integer> out = new TreeMap<>();
+        steps.forEach((id, t) -> out.put(idToName.getOrDefault(id, id), t));
+        return out;
+    }
+
+    /** Momente als kodierte {@link NDList}; Array-Namen {@code <parameterName>#<slot>}. */
+    byte[] encodeSlots(Map<String, String> idToName) {
+        NDList list = new NDList();
+        for (var e : slots.entrySet()) {
+            String name = idToName.getOrDefault(e.getKey(), e.getKey());
+            for (int i = 0; i < e.getValue().length; i++) {
+                NDArray a = e.getValue()[i];
+                a.setName(name + "#" + i);
+                list.add(a);
+            }
+        }
+        return list.encode();
+    }
+
+    /** Stellt einen mit {@link #encodeSlots} / {@link #stepCounts} gesicherten Zustand wieder her. */
+    void restore(NDManager manager, byte[] encoded, Map<String, Integer> stepCounts, Map<String, String> nameToId) {
+        slots.clear();
+        steps.clear();
+        if (stepCounts != null) stepCounts.forEach((name, t) -> steps.put(nameToId.getOrDefault(name, name), t));
+        int n = slotCount();
+        for (NDArray a : NDList.decode(manager, encoded)) {
+            String name = a.getName();
+            int sep = name.lastIndexOf('#');
+            int slot = Integer.parseInt(name.substring(sep + 1));
+            String id = nameToId.get(name.substring(0, sep));
+            if (kind == Kind.RMSPROP && slot == 1 && id != null) {
+                // Momentum-Slot älterer RMSProp-Checkpoints; die nicht-zentrierte Regel braucht ihn nicht
+                a.close();
+                continue;
+            }
+            if (id == null || slot >= n) {
+                throw new IllegalStateException("Checkpoint optimizer state does not match this model/" + kind + ": " + name);
+            }
+            slots.computeIfAbsent(id, k -> new NDArray[n])[slot] = a;
+        }
+    }
+
+    private static final class Builder extends OptimizerBuilder<Builder> {
+        @Override
+        protected Builder self() {
+            return this;
+        }
+    }
+}
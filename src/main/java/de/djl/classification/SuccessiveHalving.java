@@ -0,0 +1,105 @@
+package de.djl.classification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Successive Halving für Sweeps: alle Kandidaten trainieren zunächst {@code minEpochs} Epochen, danach
+ * überlebt jeweils das beste {@code 1/eta} (nach bester Val-Accuracy) und bekommt das {@code eta}-fache
+ * Budget – bis {@code cfg.epochs} erreicht ist. Modelle werden zwischen den Runden weitertrainiert,
+ * nicht neu gestartet; nur die Optimizer-Zustände (Momente) beginnen pro Runde neu.
+ */
+public class SuccessiveHalving {
+    private static final Logger log = LoggerFactory.getLogger(SuccessiveHalving.class);
+
+    private record Trial(Settings.Setting setting, ClassificationModel model, CNNPipeline.Datasets data,
+                         ClassificationModel.History history, long[] nanos) {
+        double bestValAcc() {
+            return history.valAcc.stream().mapToDouble(Double::doubleValue).max().orElse(0.0);
+        }
+    }
+
+    /** Führt die Runden aus und liefert ein Ergebnis pro Kandidat (auch für früh ausgeschiedene). */
+    public static List<SweepRunner.Result> run(PipelineConfig cfg, List<Settings.Setting> jobs, int parallel,
+                                               int minEpochs, int eta) throws Exception {
+        if (eta < 2) throw new IllegalArgumentException("eta must be >= 2, got " + eta);
+        var pp = CNNPipeline.prepare(cfg);
+        List<String> classes = CNNPipeline.classesOf(pp);
+        CNNPipeline.prepareShards(cfg, pp, classes);
+
+        List<Trial> all = new ArrayList<>();
+        for (Settings.Setting s : jobs) {
+            ClassificationModel cm = CNNPipeline.newModel(cfg, s, classes.size(), false);
+            CNNPipeline.Datasets ds = CNNPipeline.datasets(cfg, s, pp);
+            cm.setAugmentation(ds.augment());
+            all.add(new Trial(s, cm, ds, new ClassificationModel.History(), new long[1]));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, parallel));
+        try {
+            List<Trial> alive = new ArrayList<>(all);
+            int done = 0;
+            int budget = Math.max(1, Math.min(minEpochs, cfg.epochs));
+            for (int rung = 0; !alive.isEmpty(); rung++) {
+                int epochs = budget - done;
+                log.info("Rung {}: {} trials, {} -> {} epochs", rung, alive.size(), done, budget);
+                List<Future<?>> futures = new ArrayList<>();
+                for (Trial t : alive) {
+                    futures.add(pool.submit(() -> {
+                        long t0 = System.nanoTime();
+                        t.history().append(t.model().fit(t.data().train(), t.data().val(), epochs, cfg.imageSize, 3));
+                        t.nanos()[0] += System.nanoTime() - t0;
+                        return null;
+                    }));
+                }
+                List<Trial> finished = new ArrayList<>();
+                List<Throwable> failures = new ArrayList<>();
+                for (int i = 0; i < futures.size(); i++) {
+                    try {
+                        futures.get(i).get();
+                        finished.add(alive.get(i));
+                    } catch (ExecutionException e) {
+                        log.error("Trial {} failed: {}", alive.get(i).setting().name, e.getCause().toString());
+                        failures.add(e.getCause());
+                    }
+                }
+                if (finished.isEmpty()) {
+                    IllegalStateException e = new IllegalStateException(
+                            "All " + alive.size() + " trials of rung " + rung + " failed");
+                    failures.forEach(e::addSuppressed);
+                    throw e;
+                }
+                done = budget;
+                if (budget >= cfg.epochs) {
+                    for (Trial t : finished) CNNPipeline.finish(cfg, t.setting(), t.model(), t.history(), classes);
+                    break;
+                }
+                finished.sort(Comparator.comparingDouble(Trial::bestValAcc).reversed());
+                int keep = Math.max(1, (finished.size() + eta - 1) / eta);
+                for (Trial t : finished.subList(keep, finished.size())) {
+                    log.info("Rung {}: drop {} (best val acc {})", rung, t.setting().name,
+                            String.format(Locale.ROOT, "%.4f", t.bestValAcc()));
+                }
+                alive = new ArrayList<>(finished.subList(0, keep));
+                budget = Math.min(cfg.epochs, budget * eta);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        List<SweepRunner.Result> results = new ArrayList<>();
+        for (Trial t : all) {
+            results.add(new SweepRunner.Result(t.setting().name, t.setting(), t.history(), t.nanos()[0] / 1e9));
+        }
+        return results;
+    }
+}
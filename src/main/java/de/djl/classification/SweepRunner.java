@@ -0,0 +1,161 @@
+package de.djl.classification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Hyperparameter-Sweep: bereitet das Dataset einmal vor und trainiert mehrere Settings (bzw. ein Grid
+ * darüber) parallel im selben Prozess. Die PyTorch-Threads werden auf die parallelen Jobs aufgeteilt;
+ * das Ergebnis landet als {@code leaderboard.csv} unter {@code output/sweeps/<zeitstempel>/}.
+ *
+ * <pre>
+ * --sweep-settings baseline,deep_slow   (Standard: alle aus settings.json)
+ * --grid-lr 0.001,0.01  --grid-bs 16,32  --grid-accum 1,4  --grid-kernel 3,5  --grid-optimizer adam,sgd
+ * --parallel 3                          (Standard: min(Jobs, Kerne))
+ * --halving true --min-epochs 1 --eta 3 (Successive Halving statt voller Läufe für alle Jobs)
+ * </pre>
+ */
+public class SweepRunner {
+    private static final Logger log = LoggerFactory.getLogger(SweepRunner.class);
+
+    public record Result(String name, Settings.Setting setting, ClassificationModel.History history, double seconds) {
+        double bestValAcc() {
+            return history.valAcc.stream().mapToDouble(Double::doubleValue).max().orElse(0.0);
+        }
+    }
+
+    public static void main(String[] argv) throws Exception {
+        String cfgRes = "runconfig.json";
+        String settingsCsv = null;
+        Map<String, String> grid = new LinkedHashMap<>();
+        int parallel = 0;
+        boolean halving = false;
+        int minEpochs = 1, eta = 3;
+        for (int i = 0; i < argv.length; i++) {
+            switch (argv[i]) {
+                case "--config" -> cfgRes = argv[++i];
+                case "--sweep-settings" -> settingsCsv = argv[++i];
+                case "--grid-lr", "--grid-bs", "--grid-accum", "--grid-kernel", "--grid-optimizer" -> grid.put(argv[i].substring(7), argv[++i]);
+                case "--parallel" -> parallel = Integer.parseInt(argv[++i]);
+                case "--halving" -> halving = Boolean.parseBoolean(argv[++i]);
+                case "--min-epochs" -> minEpochs = Integer.parseInt(argv[++i]);
+                case "--eta" -> eta = Integer.parseInt(argv[++i]);
+                default -> { }
+            }
+        }
+        PipelineConfig cfg = PipelineConfig.loadFromResources(cfgRes);
+        cfg.applyOverrides(argv);
+
+        Settings settings = Settings.loadFromResources(cfg.settingsJson);
+        List<Settings.Setting> base = settingsCsv == null
+                ? settings.all()
+                : Arrays.stream(settingsCsv.split(",")).map(String::trim).map(settings::get).toList();
+        List<Settings.Setting> jobs = expandGrid(base, grid);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (parallel <= 0) parallel = Math.min(jobs.size(), cores);
+        parallel = Math.max(1, Math.min(parallel, jobs.size()));
+        // Engine-Threads vor der ersten Engine-Nutzung aufteilen, sonst überbuchen N Jobs x alle Kerne die CPU;
+        // explizite --intra-op-threads/--inter-op-threads haben Vorrang, nur Ungesetztes (0) wird aufgefüllt.
+        if (cfg.intraOpThreads <= 0) cfg.intraOpThreads = Math.max(1, cores / parallel);
+        if (cfg.interOpThreads <= 0) cfg.interOpThreads = 1;
+        CNNPipeline.configureEngineThreads(cfg.intraOpThreads, cfg.interOpThreads);
+        log.info("Sweep: {} jobs, {} in parallel, {} engine threads each", jobs.size(), parallel, cfg.intraOpThreads);
+
+        List<Result> results = halving
+                ? SuccessiveHalving.run(cfg, jobs, parallel, minEpochs, eta)
+                : run(cfg, jobs, parallel);
+        Path outDir = Paths.get("output/sweeps/" + DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").format(LocalDateTime.now()));
+        writeLeaderboard(results, outDir.resolve("leaderboard.csv"));
+    }
+
+    /** Bereitet das Dataset einmal vor und trainiert alle {@code jobs} mit {@code parallel} gleichzeitigen Läufen. */
+    public static List<Result> run(PipelineConfig cfg, List<Settings.Setting> jobs, int parallel) throws Exception {
+        var pp = CNNPipeline.prepare(cfg);
+        List<String> classes = CNNPipeline.classesOf(pp);
+        CNNPipeline.prepareShards(cfg, pp, classes);
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallel);
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Settings.Setting s : jobs) {
+                futures.add(pool.submit(() -> {
+                    long t0 = System.nanoTime();
+                    log.info("Start job {}", s);
+                    ClassificationModel.History h = CNNPipeline.train(cfg, s, pp, classes, false);
+                    double secs = (System.nanoTime() - t0) / 1e9;
+                    log.info("Finished job {} in {} s", s.name, String.format(Locale.ROOT, "%.1f", secs));
+                    return new Result(s.name, s, h, secs);
+                }));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> f : futures) {
+                try {
+                    results.add(f.get());
+                } catch (ExecutionException e) {
+                    log.error("Sweep job failed: {}", e.getCause().toString());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    static List<Settings.Setting> expandGrid(List<Settings.Setting> base, Map<String, String> grid) {
+        List<Settings.Setting> out = new ArrayList<>(base);
+        for (var axis : grid.entrySet()) {
+            String[] values = axis.getValue().split(",");
+            BiConsumer<Settings.Setting, String> apply = switch (axis.getKey()) {
+                case "lr" -> (s, v) -> s.learningRate = Double.parseDouble(v);
+                case "bs" -> (s, v) -> s.batchSize = Integer.parseInt(v);
+                case "accum" -> (s, v) -> s.accumulationSteps = Integer.parseInt(v);
+                case "kernel" -> (s, v) -> s.kernel = new int[]{Integer.parseInt(v), Integer.parseInt(v)};
+                case "optimizer" -> (s, v) -> s.optimizer = v;
+                default -> throw new IllegalArgumentException("Unknown grid axis: " + axis.getKey());
+            };
+            List<Settings.Setting> next = new ArrayList<>();
+            for (Settings.Setting s : out) {
+                for (String raw : values) {
+                    String v = raw.trim();
+                    Settings.Setting c = s.copy(s.name + "-" + axis.getKey() + v);
+                    apply.accept(c, v);
+                    next.add(c);
+                }
+            }
+            out = next;
+        }
+        return out;
+    }
+
+    static void writeLeaderboard(List<Result> results, Path csv) throws IOException {
+        List<Result> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingDouble(Result::bestValAcc).reversed());
+        List<String> lines = new ArrayList<>();
+        lines.add("rank,name,bestValAcc,bestEpoch,epochs,finalValLoss,finalTrainAcc,seconds,setting");
+        for (int i = 0; i < sorted.size(); i++) {
+            Result r = sorted.get(i);
+            var h = r.history();
+            int n = h.valAcc.size();
+            int bestEpoch = n == 0 ? 0 : h.valAcc.indexOf(Collections.max(h.valAcc)) + 1;
+            lines.add(String.format(Locale.ROOT, "%d,%s,%.4f,%d,%d,%.4f,%.4f,%.1f,\"%s\"",
+                    i + 1, r.name(), r.bestValAcc(), bestEpoch, n,
+                    n == 0 ? Double.NaN : h.valLoss.get(n - 1),
+                    n == 0 ? Double.NaN : h.trainAcc.get(n - 1),
+                    r.seconds(), r.setting().toString().replace("\"", "\"\"")));
+        }
+        Files.createDirectories(csv.getParent());
+        Files.write(csv, lines);
+        log.info("Leaderboard ({} runs) -> {}", sorted.size(), csv.toAbsolutePath());
+    }
+}
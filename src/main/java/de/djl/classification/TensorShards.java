@@ -0,0 +1,213 @@
+package de.djl.classification;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Binäres Shard-Format für vorverarbeitete Splits: Records fester Länge
+ * {@code [int32 label (LE)][C*H*W uint8, CHW]}, verteilt auf Dateien {@code shard-00000.bin ...}
+ * mit höchstens {@link #MAX_SHARD_BYTES} Bytes. Shape, Klassen und Normalisierung stehen in {@code header.json}.
+ */
+public class TensorShards {
+    private static final Logger log = LoggerFactory.getLogger(TensorShards.class);
+
+    public static final String HEADER_FILE = "header.json";
+    static final long MAX_SHARD_BYTES = 1L << 30;
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Header {
+        public int version = 1;
+        public int channels;
+        public int height;
+        public int width;
+        public long count;
+        public int recordsPerShard;
+        public List<String> classes;
+        public float[] mean;
+        public float[] std;
+        public List<String> files = new ArrayList<>();
+        public String sourceDigest;
+
+        public int stride() { return 4 + channels * height * width; }
+    }
+
+    /**
+     * Schreibt die Shards für {@code splitRoot} (Layout {@code <class>/<image>}) nach {@code outDir},
+     * sofern dort nicht bereits Shards desselben Quellstands liegen. Neue Shards entstehen in einem
+     * Staging-Verzeichnis und ersetzen {@code outDir} erst fertig: bestehende Dateien werden nie gekürzt oder
+     * überschrieben, sodass Jobs, die sie per {@link FileChannel#map} eingeblendet haben, weiterlesen können.
+     */
+    public static Header ensure(Path splitRoot, Path outDir, List<String> classes, int imageSize,
+                                float[] mean, float[] std) throws IOException {
+        List<Path> images = new ArrayList<>();
+        List<Integer> labels = new ArrayList<>();
+        for (int c = 0; c < classes.size(); c++) {
+            Path clsDir = splitRoot.resolve(classes.get(c));
+            if (!Files.isDirectory(clsDir)) continue;
+            try (var s = Files.list(clsDir)) {
+                for (Path p : s.filter(Files::isRegularFile).sorted().toList()) {
+                    images.add(p);
+                    labels.add(c);
+                }
+            }
+        }
+        String digest = digest(splitRoot, images, imageSize);
+
+        Path headerFile = outDir.resolve(HEADER_FILE);
+        if (Files.exists(headerFile)) {
+            Header existing = readHeader(outDir);
+            if (digest.equals(existing.sourceDigest)) {
+                log.info("Reusing tensor shards at {} ({} records)", outDir.toAbsolutePath(), existing.count);
+                return existing;
+            }
+        }
+        Files.createDirectories(outDir.getParent());
+        Path staging = Files.createTempDirectory(outDir.getParent(), "." + outDir.getFileName() + "-");
+        try {
+            Header h = write(images, labels, staging, classes, imageSize, mean, std, digest);
+            if (!publish(staging, outDir, digest)) {
+                log.info("Tensor shards at {} were written concurrently; using them", outDir.toAbsolutePath());
+                return readHeader(outDir);
+            }
+            log.info("Wrote {} records into {} shard(s) at {}", h.count, h.files.size(), outDir.toAbsolutePath());
+            return h;
+        } finally {
+            Preprocessing.deleteTree(staging);
+        }
+    }
+
+    /**
+     * Ersetzt {@code outDir} durch {@code staging} (Dateilock gegen parallele Prozesse, Klassen-Monitor innerhalb
+     * der JVM). Der Vorgänger wird nur entfernt, nicht überschrieben – eingeblendete Dateien bleiben gültig.
+     *
+     * @return {@code false}, wenn {@code outDir} bereits Shards mit {@code digest} enthielt.
+     */
+    private static synchronized boolean publish(Path staging, Path outDir, String digest) throws IOException {
+        Path lockFile = outDir.resolveSibling(outDir.getFileName() + ".lock");
+        // Das Lock gilt bis zum Schließen des Kanals.
+        try (FileChannel ch = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ch.lock();
+            if (Files.exists(outDir.resolve(HEADER_FILE)) && digest.equals(readHeader(outDir).sourceDigest)) return false;
+            Path old = null;
+            if (Files.exists(outDir)) {
+                old = outDir.resolveSibling("." + outDir.getFileName() + "-old-" + System.nanoTime());
+                Files.move(outDir, old, StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.move(staging, outDir, StandardCopyOption.ATOMIC_MOVE);
+            if (old != null) Preprocessing.deleteTree(old);
+            return true;
+        }
+    }
+
+    public static Header readHeader(Path dir) throws IOException {
+        return new ObjectMapper().readValue(dir.resolve(HEADER_FILE).toFile(), Header.class);
+    }
+
+    private static Header write(List<Path> images, List<Integer> labels, Path outDir, List<String> classes,
+                                int imageSize, float[] mean, float[] std, String digest) throws IOException {
+        Files.createDirectories(outDir);
+        Header h = new Header();
+        h.channels = 3;
+        h.height = imageSize;
+        h.width = imageSize;
+        h.classes = classes;
+        h.mean = mean;
+        h.std = std;
+        h.sourceDigest = digest;
+        h.recordsPerShard = (int) Math.max(1, MAX_SHARD_BYTES / h.stride());
+
+        ByteBuffer rec = ByteBuffer.allocate(h.stride()).order(ByteOrder.LITTLE_ENDIAN);
+        int[] argb = new int[imageSize * imageSize];
+        int plane = imageSize * imageSize;
+        FileChannel ch = null;
+        try {
+            for (int i = 0; i < images.size(); i++) {
+                BufferedImage img;
+                try {
+                    img = ImageIO.read(images.get(i).toFile());
+                } catch (IOException e) {
+                    img = null;
+                }
+                if (img == null) {
+                    log.warn("Skip (not decodable for shards): {}", images.get(i));
+                    continue;
+                }
+                img = fit(img, imageSize);
+                img.getRGB(0, 0, imageSize, imageSize, argb, 0, imageSize);
+
+                rec.clear();
+                rec.putInt(labels.get(i));
+                for (int p = 0; p < plane; p++) rec.put(4 + p, (byte) (argb[p] >> 16));
+                for (int p = 0; p < plane; p++) rec.put(4 + plane + p, (byte) (argb[p] >> 8));
+                for (int p = 0; p < plane; p++) rec.put(4 + 2 * plane + p, (byte) argb[p]);
+                rec.position(0).limit(h.stride());
+
+                if (h.count % h.recordsPerShard == 0) {
+                    if (ch != null) ch.close();
+                    String name = String.format("shard-%05d.bin", h.files.size());
+                    h.files.add(name);
+                    ch = FileChannel.open(outDir.resolve(name), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                }
+                while (rec.hasRemaining()) ch.write(rec);
+                h.count++;
+            }
+        } finally {
+            if (ch != null) ch.close();
+        }
+
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(outDir.resolve(HEADER_FILE).toFile(), h);
+        return h;
+    }
+
+    /** Preprocessing liefert bereits {@code imageSize}²; andere Größen werden einfach skaliert. */
+    private static BufferedImage fit(BufferedImage img, int imageSize) {
+        if (img.getWidth() == imageSize && img.getHeight() == imageSize) return img;
+        BufferedImage out = new BufferedImage(imageSize, imageSize, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(img, 0, 0, imageSize, imageSize, null);
+        g.dispose();
+        return out;
+    }
+
+    /**
+     * Quellstand des Splits: relative Pfade und Größen, dazu der {@code splitDigest} aus {@code metadata.json}
+     * (enthält die Cache-Schlüssel, also Größe und mtime der Rohbilder). Ohne Cache fehlt er; dann geht die mtime
+     * jeder Split-Datei ein, damit ein neu kodiertes Bild gleicher Größe ebenfalls neue Shards auslöst.
+     */
+    private static String digest(Path splitRoot, List<Path> images, int imageSize) throws IOException {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            String split = Preprocessing.splitDigestOf(splitRoot.getParent());
+            md.update(("v2|" + imageSize + "|" + split).getBytes(StandardCharsets.UTF_8));
+            for (Path p : images) {
+                String line = "|" + splitRoot.relativize(p) + ":" + Files.size(p)
+                        + (split == null ? "@" + Files.getLastModifiedTime(p).toMillis() : "");
+                md.update(line.getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+}
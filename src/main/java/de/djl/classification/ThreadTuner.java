@@ -0,0 +1,281 @@
+package de.djl.classification;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDList;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.Shape;
+import ai.djl.training.DefaultTrainingConfig;
+import ai.djl.training.GradientCollector;
+import ai.djl.training.Trainer;
+import ai.djl.training.dataset.Batch;
+import ai.djl.training.dataset.RandomAccessDataset;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sucht die schnellste Aufteilung der Kerne auf PyTorch-Threads (intra-op) und Loader-Threads für das
+ * konfigurierte Setting. Jede Kandidatin läuft in einer eigenen JVM, weil sich die Engine-Threads nur vor der
+ * Initialisierung setzen lassen; gemessen werden die Decode-Rate des Loaders allein und Trainingsschritte
+ * (Forward/Backward/Optimizer auf echten Batches). Das Ergebnis landet in
+ * {@code output/tuning/<host>-<setting>-<size>px.json} – eine Datei je Setting und Bildgröße – und wird von
+ * {@link CNNPipeline} beim Start übernommen ({@link #apply}).
+ * <pre>
+ * [--steps 20] [--warmup 5] [--candidates 8:0,6:2,4:4]  (+ übliche Pipeline-Optionen, v. a. --setting)
+ * </pre>
+ */
+public class ThreadTuner {
+    private static final Logger log = LoggerFactory.getLogger(ThreadTuner.class);
+    static final Path TUNING_DIR = Paths.get("output/tuning");
+    private static final String RESULT_MARKER = "THREAD_TUNER_RESULT ";
+
+    /** Inhalt von {@code output/tuning/<host>-<setting>-<size>px.json}. */
+    public static class Result {
+        public String host;
+        public int cores;
+        public String setting;
+        public int imageSize;
+        public int intraOpThreads;
+        public int interOpThreads;
+        public int loaderWorkers;
+        public double samplesPerSec;
+        public List<Probe> probes = new ArrayList<>();
+    }
+
+    public static class Probe {
+        public int intraOpThreads;
+        public int loaderWorkers;
+        /** Nur Laden/Decodieren, ohne Rechenlast. */
+        public double decodeSamplesPerSec;
+        /** Trainingsschritte inkl. Warten auf Daten. */
+        public double samplesPerSec;
+    }
+
+    public static void main(String[] argv) throws Exception {
+        String cfgRes = "runconfig.json";
+        int steps = 20, warmup = 5;
+        String candidates = null;
+        int[] probe = null;
+        Path data = null;
+        for (int i = 0; i < argv.length; i++) {
+            switch (argv[i]) {
+                case "--config" -> cfgRes = argv[++i];
+                case "--steps" -> steps = Integer.parseInt(argv[++i]);
+                case "--warmup" -> warmup = Integer.parseInt(argv[++i]);
+                case "--candidates" -> candidates = argv[++i];
+                case "--probe" -> probe = new int[]{Integer.parseInt(argv[++i]), Integer.parseInt(argv[++i])};
+                case "--probe-data" -> data = Paths.get(argv[++i]);
+                default -> { }
+            }
+        }
+        PipelineConfig cfg = PipelineConfig.loadFromResources(cfgRes);
+        cfg.applyOverrides(argv);
+        Settings.Setting setting = Settings.loadFromResources(cfg.settingsJson).get(cfg.setting);
+
+        if (probe != null) {
+            Probe p = probe(cfg, setting, data, probe[1], warmup, steps);
+            p.intraOpThreads = probe[0];
+            System.out.println(RESULT_MARKER + new ObjectMapper().writeValueAsString(p));
+            System.exit(0);
+        }
+
+        var pp = CNNPipeline.prepare(cfg);
+        CNNPipeline.prepareShards(cfg, pp, CNNPipeline.classesOf(pp));
+        int cores = Runtime.getRuntime().availableProcessors();
+        Result result = new Result();
+        result.host = hostName();
+        result.cores = cores;
+        result.setting = setting.name;
+        result.imageSize = cfg.imageSize;
+        result.interOpThreads = 1;
+        result.samplesPerSec = -1;
+        for (int[] c : candidates != null ? parseCandidates(candidates) : candidates(cores)) {
+            Probe p = runProbe(argv, pp.outRoot(), c[0], c[1], warmup, steps);
+            if (p == null) continue;
+            result.probes.add(p);
+            log.info("intra-op={} loaders={}: {} samples/s (decode alone {} samples/s)", c[0], c[1],
+                    String.format(Locale.ROOT, "%.1f", p.samplesPerSec),
+                    String.format(Locale.ROOT, "%.1f", p.decodeSamplesPerSec));
+            if (p.samplesPerSec > result.samplesPerSec) {
+                result.samplesPerSec = p.samplesPerSec;
+                result.intraOpThreads = c[0];
+                result.loaderWorkers = c[1];
+            }
+        }
+        if (result.probes.isEmpty()) throw new IllegalStateException("All probes failed");
+        Path out = resultFile(result.host, result.setting, result.imageSize);
+        Files.createDirectories(TUNING_DIR);
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(out.toFile(), result);
+        log.info("Best on {} ({} cores): intra-op={} inter-op={} loaders={} at {} samples/s -> {}", result.host, cores,
+                result.intraOpThreads, result.interOpThreads, result.loaderWorkers,
+                String.format(Locale.ROOT, "%.1f", result.samplesPerSec), out.toAbsolutePath());
+    }
+
+    /**
+     * Übernimmt das gespeicherte Ergebnis dieses Hosts für Setting und Bildgröße von {@code cfg}, sofern es mit
+     * derselben Kernzahl gemessen wurde: Engine-Threads, sofern nicht per System-Property gesetzt
+     * (z. B. vom {@link DistributedLauncher}), und Loader-Threads, sofern nicht per {@code --loader-workers}
+     * angegeben. Vor der ersten Engine-Nutzung aufrufen.
+     */
+    static void apply(PipelineConfig cfg, String[] argv) {
+        Path file = resultFile(hostName(), cfg.setting, cfg.imageSize);
+        if (!Files.isRegularFile(file)) return;
+        Result r;
+        try {
+            r = new ObjectMapper().readValue(file.toFile(), Result.class);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable tuning file {}: {}", file, e.toString());
+            return;
+        }
+        if (r.cores != Runtime.getRuntime().availableProcessors()) {
+            log.warn("Tuning file {} was measured with {} cores, now {}; ignoring it", file, r.cores,
+                    Runtime.getRuntime().availableProcessors());
+            return;
+        }
+        if (!cfg.setting.equals(r.setting) || cfg.imageSize != r.imageSize) {
+            log.warn("Tuning file {} was measured for setting {} at {} px, now {} at {} px; ignoring it", file,
+                    r.setting, r.imageSize, cfg.setting, cfg.imageSize);
+            return;
+        }
+        boolean engineSet = System.getProperty("ai.djl.pytorch.num_threads") != null;
+        if (!engineSet) CNNPipeline.configureEngineThreads(r.intraOpThreads, r.interOpThreads);
+        boolean loadersSet = Arrays.asList(argv).contains("--loader-workers");
+        if (!loadersSet) cfg.loaderWorkers = r.loaderWorkers;
+        log.info("Applied thread tuning from {}: intra-op={} inter-op={} loaders={}", file,
+                engineSet ? "(kept)" : r.intraOpThreads, engineSet ? "(kept)" : r.interOpThreads,
+                loadersSet ? "(kept)" : r.loaderWorkers);
+    }
+
+    /** Kandidaten (intra-op, Loader): alle Kerne fürs Rechnen bzw. Kerne zwischen Loader und Engine aufgeteilt. */
+    static List<int[]> candidates(int cores) {
+        Set<List<Integer>> seen = new LinkedHashSet<>();
+        for (int loaders : new int[]{0, 1, 2, 4}) {
+            if (loaders > 0 && loaders >= cores) continue;
+            for (int intra : new int[]{cores - loaders, Math.max(1, (cores - loaders) / 2), cores}) {
+                seen.add(List.of(Math.max(1, intra), loaders));
+            }
+        }
+        return seen.stream().map(l -> new int[]{l.get(0), l.get(1)}).toList();
+    }
+
+    private static List<int[]> parseCandidates(String csv) {
+        return Arrays.stream(csv.split(",")).map(String::trim).map(c -> c.split(":"))
+                .map(c -> new int[]{Integer.parseInt(c[0]), Integer.parseInt(c[1])}).toList();
+    }
+
+    /** Startet eine Kandidatin in einer frischen JVM und liest deren Ergebniszeile; {@code null} bei Fehler. */
+    private static Probe runProbe(String[] argv, Path data, int intra, int loaders, int warmup, int steps)
+            throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Dai.djl.pytorch.num_threads=" + intra,
+                "-Dai.djl.pytorch.num_interop_threads=1",
+                "-cp", System.getProperty("java.class.path"),
+                ThreadTuner.class.getName()));
+        cmd.addAll(Arrays.asList(argv));
+        cmd.addAll(List.of("--probe", String.valueOf(intra), String.valueOf(loaders),
+                "--probe-data", data.toString(), "--warmup", String.valueOf(warmup), "--steps", String.valueOf(steps)));
+        Process proc = new ProcessBuilder(cmd).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        Probe result = null;
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(proc.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.startsWith(RESULT_MARKER)) {
+                    result = new ObjectMapper().readValue(line.substring(RESULT_MARKER.length()), Probe.class);
+                }
+            }
+        }
+        int code = proc.waitFor();
+        if (code != 0 || result == null) {
+            log.warn("Probe intra-op={} loaders={} failed (exit {})", intra, loaders, code);
+            return null;
+        }
+        return result;
+    }
+
+    /** Läuft in der Kind-JVM: erst Loader allein, dann {@code warmup + steps} Trainingsschritte. */
+    private static Probe probe(PipelineConfig cfg, Settings.Setting setting, Path data, int loaders, int warmup, int steps)
+            throws Exception {
+        var pp = new Preprocessing.PreparedPaths(data, data.resolve("train"), data.resolve("val"), data.resolve("metadata.json"));
+        List<String> classes = CNNPipeline.classesOf(pp);
+        RandomAccessDataset train = CNNPipeline.datasets(cfg, setting, pp).train();
+
+        ClassificationModel cm = new ClassificationModel(setting, classes.size(), false);
+        DefaultTrainingConfig config = new DefaultTrainingConfig(cm.getLoss()).optOptimizer(cm.newOptimizer());
+        ExecutorService pool = loaders > 0 ? Executors.newFixedThreadPool(loaders) : null;
+        if (pool != null) config.optExecutorService(pool);
+        Probe p = new Probe();
+        p.loaderWorkers = loaders;
+        try (Trainer trainer = cm.getModel().newTrainer(config)) {
+            cm.initializeIfNeeded(trainer, new Shape(1, 3, cfg.imageSize, cfg.imageSize));
+
+            Iterator<Batch> it = trainer.iterateDataset(train).iterator();
+            long samples = 0, t0 = 0;
+            for (int i = 0; i < warmup + steps && it.hasNext(); i++) {
+                if (i == warmup) t0 = System.nanoTime();
+                try (Batch b = it.next()) {
+                    if (i >= warmup) samples += b.getSize();
+                }
+            }
+            p.decodeSamplesPerSec = samples / Math.max(1e-9, (System.nanoTime() - t0) / 1e9);
+
+            it = trainer.iterateDataset(train).iterator();
+            samples = 0;
+            t0 = 0;
+            for (int i = 0; i < warmup + steps && it.hasNext(); i++) {
+                if (i == warmup) t0 = System.nanoTime();
+                Batch b = it.next();
+                try (NDManager scope = trainer.getManager().newSubManager();
+                     GradientCollector gc = trainer.newGradientCollector()) {
+                    b.getData().attach(scope);
+                    b.getLabels().attach(scope);
+                    NDArray preds = trainer.forward(b.getData()).getFirst();
+                    NDArray y = ClassificationModel.labelsOf(b);
+                    NDArray loss = cm.getLoss().evaluate(new NDList(y), new NDList(preds));
+                    gc.backward(loss.getShape().dimension() == 0 ? loss : loss.mean());
+                } finally {
+                    b.close();
+                }
+                trainer.step();
+                if (i >= warmup) samples += b.getSize();
+            }
+            p.samplesPerSec = samples / Math.max(1e-9, (System.nanoTime() - t0) / 1e9);
+        } finally {
+            if (pool != null) pool.shutdownNow();
+        }
+        return p;
+    }
+
+    /** Ergebnisdatei je Host, Setting und Bildgröße, damit Messungen verschiedener Settings nebeneinander liegen. */
+    static Path resultFile(String host, String setting, int imageSize) {
+        return TUNING_DIR.resolve(host + "-" + setting.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + imageSize + "px.json");
+    }
+
+    static String hostName() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = System.getenv().getOrDefault("HOSTNAME", "localhost");
+        }
+        return host.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
@@ -0,0 +1,410 @@
+package de.djl.classification;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Phasen-Timer für {@link ClassificationModel#fit}: Nanosekunden pro Phase (Datenwarten, Forward, Backward,
+ * Gradienten-Sync, Optimizer-Schritt, Metrik-Sync, Validierung, Checkpoint), Batch-Latenz-Perzentile,
+ * Samples/s, Heap und lebende NDArrays. Ausgabe als JSONL (eine Zeile pro Batch und pro Epoche),
+ * optional als Prometheus-Textformat unter {@code http://127.0.0.1:<port>/metrics} (ein Endpunkt für alle
+ * Läufe des Prozesses, Label {@code run}) und als JFR-Events ({@code de.djl.classification.TrainingPhase},
+ * nur bei laufender Aufzeichnung).
+ * Nur vom Trainings-Thread zu benutzen; der Prometheus-Endpunkt liest lediglich Zähler.
+ */
+public class TrainingInstrumentation {
+    private static final Logger log = LoggerFactory.getLogger(TrainingInstrumentation.class);
+
+    public enum Phase {
+        DATA_WAIT, FORWARD, BACKWARD, GRAD_SYNC, OPTIMIZER_STEP, METRIC_SYNC, VALIDATION, CHECKPOINT;
+
+        final String key = name().toLowerCase(Locale.ROOT);
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Phase[] PHASES = Phase.values();
+    private static final EventType PHASE_EVENT = EventType.getEventType(PhaseEvent.class);
+
+    /** Abgeschaltete Instrumentierung: alle Aufrufe kehren sofort zurück (erst nach PHASES initialisieren). */
+    public static final TrainingInstrumentation OFF = new TrainingInstrumentation(null, 0, "");
+
+    private final boolean enabled;
+    private final Path jsonl;
+    private final int port;
+    private final String run;
+
+    // kumuliert über den ganzen Lauf (Prometheus)
+    private final AtomicLongArray totalNanos = new AtomicLongArray(PHASES.length);
+    private final AtomicLongArray totalCount = new AtomicLongArray(PHASES.length);
+    private final AtomicLongArray gauges = new AtomicLongArray(Gauge.values().length);
+    private volatile double[] lastEpoch = new double[0];
+
+    // pro Epoche
+    private final Histogram[] phaseHist = new Histogram[PHASES.length];
+    private final Histogram batchLatency = new Histogram();
+    private final long[] batchNanos = new long[PHASES.length];
+    private long epochStart;
+    private long epochSamples;
+
+    private final PhaseEvent[] events = new PhaseEvent[PHASES.length];
+    private boolean jfr;
+    private int epoch;
+    private long step;
+
+    private BufferedWriter out;
+    private Endpoint endpoint;
+    private final StringBuilder line = new StringBuilder(256);
+
+    private enum Gauge { EPOCH, STEP, SAMPLES, HEAP_USED, HEAP_COMMITTED, NATIVE_ARRAYS }
+
+    /**
+     * @param jsonl Ziel der JSONL-Zeilen (wird angehängt)
+     * @param port  Port des Prometheus-Endpunkts auf localhost (0 = keiner)
+     * @param run   Label {@code run} der Prometheus-Metriken (z. B. Setting-Name)
+     */
+    public TrainingInstrumentation(Path jsonl, int port, String run) {
+        this.enabled = jsonl != null;
+        this.jsonl = jsonl;
+        this.port = port;
+        this.run = run;
+        for (int i = 0; i < PHASES.length; i++) phaseHist[i] = new Histogram();
+    }
+
+    /** Öffnet JSONL-Datei und ggf. Endpunkt; zu Beginn von {@code fit}. */
+    void open() throws IOException {
+        if (!enabled) return;
+        Files.createDirectories(jsonl.getParent());
+        out = Files.newBufferedWriter(jsonl, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (port > 0) endpoint = Endpoint.register(port, this);
+    }
+
+    /** Schließt JSONL-Datei und Endpunkt; am Ende von {@code fit}. */
+    void close() {
+        if (!enabled) return;
+        if (endpoint != null) {
+            endpoint.unregister(this);
+            endpoint = null;
+        }
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.warn("Closing {} failed: {}", jsonl, e.toString());
+            }
+            out = null;
+        }
+    }
+
+    void startEpoch(int epoch) {
+        if (!enabled) return;
+        this.epoch = epoch;
+        for (Histogram h : phaseHist) h.reset();
+        batchLatency.reset();
+        // Phasen nach dem letzten Batch (Metrik-Sync, Validierung, Checkpoint) gehören zur Epoche, nicht zum nächsten Batch
+        Arrays.fill(batchNanos, 0);
+        epochSamples = 0;
+        epochStart = System.nanoTime();
+        jfr = PHASE_EVENT.isEnabled();
+        gauges.set(Gauge.EPOCH.ordinal(), epoch + 1);
+    }
+
+    long begin(Phase phase) {
+        if (!enabled) return 0;
+        if (jfr) {
+            PhaseEvent e = new PhaseEvent();
+            e.begin();
+            events[phase.ordinal()] = e;
+        }
+        return System.nanoTime();
+    }
+
+    void end(Phase phase, long t0) {
+        if (!enabled) return;
+        long ns = System.nanoTime() - t0;
+        int i = phase.ordinal();
+        batchNanos[i] += ns;
+        totalNanos.addAndGet(i, ns);
+        totalCount.incrementAndGet(i);
+        phaseHist[i].record(ns);
+        PhaseEvent e = events[i];
+        if (e != null) {
+            e.end();
+            e.phase = phase.key;
+            e.epoch = epoch + 1;
+            e.step = step;
+            e.commit();
+            events[i] = null;
+        }
+    }
+
+    /** Schließt einen Optimizer-Schritt ab und schreibt dessen Phasenzeiten als JSONL-Zeile. */
+    void endBatch(int batchInEpoch, long step, long samples) {
+        if (!enabled) return;
+        this.step = step;
+        epochSamples += samples;
+        long latency = 0;
+        line.setLength(0);
+        line.append("{\"type\":\"batch\",\"epoch\":").append(epoch + 1)
+                .append(",\"batch\":").append(batchInEpoch)
+                .append(",\"step\":").append(step)
+                .append(",\"samples\":").append(samples)
+                .append(",\"ns\":{");
+        boolean first = true;
+        for (int i = 0; i < PHASES.length; i++) {
+            if (batchNanos[i] == 0) continue;
+            if (!first) line.append(',');
+            line.append('"').append(PHASES[i].key).append("\":").append(batchNanos[i]);
+            latency += batchNanos[i];
+            batchNanos[i] = 0;
+            first = false;
+        }
+        line.append("},\"latency_ns\":").append(latency).append("}\n");
+        batchLatency.record(latency);
+        gauges.set(Gauge.STEP.ordinal(), step);
+        gauges.addAndGet(Gauge.SAMPLES.ordinal(), samples);
+        write(line);
+    }
+
+    /** Epochen-Zusammenfassung: Phasen-Summen und -Perzentile, Durchsatz, Latenz, Heap, NDArrays, Metriken. */
+    void endEpoch(double trainLoss, double trainAcc, double valLoss, double valAcc, long nativeArrays) {
+        if (!enabled) return;
+        double seconds = (System.nanoTime() - epochStart) / 1e9;
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        gauges.set(Gauge.HEAP_USED.ordinal(), heap.getUsed());
+        gauges.set(Gauge.HEAP_COMMITTED.ordinal(), heap.getCommitted());
+        gauges.set(Gauge.NATIVE_ARRAYS.ordinal(), nativeArrays);
+
+        Map<String, Object> rec = new LinkedHashMap<>();
+        rec.put("type", "epoch");
+        rec.put("run", run);
+        rec.put("epoch", epoch + 1);
+        rec.put("samples", epochSamples);
+        rec.put("seconds", seconds);
+        rec.put("samples_per_sec", seconds > 0 ? epochSamples / seconds : 0.0);
+        Map<String, Object> phases = new LinkedHashMap<>();
+        for (int i = 0; i < PHASES.length; i++) {
+            Histogram h = phaseHist[i];
+            if (h.count == 0) continue;
+            phases.put(PHASES[i].key, Map.of("total_ns", h.sum, "count", h.count,
+                    "p50_ns", h.percentile(0.50), "p90_ns", h.percentile(0.90), "p99_ns", h.percentile(0.99)));
+        }
+        rec.put("phases", phases);
+        rec.put("batch_latency", Map.of("p50_ns", batchLatency.percentile(0.50), "p90_ns", batchLatency.percentile(0.90),
+                "p99_ns", batchLatency.percentile(0.99), "max_ns", batchLatency.max));
+        rec.put("heap_used", heap.getUsed());
+        rec.put("heap_committed", heap.getCommitted());
+        rec.put("native_ndarrays", nativeArrays);
+        rec.put("train_loss", trainLoss);
+        rec.put("train_acc", trainAcc);
+        rec.put("val_loss", valLoss);
+        rec.put("val_acc", valAcc);
+        lastEpoch = new double[]{seconds > 0 ? epochSamples / seconds : 0.0,
+                batchLatency.percentile(0.50) / 1e9, batchLatency.percentile(0.90) / 1e9, batchLatency.percentile(0.99) / 1e9,
+                trainLoss, trainAcc, valLoss, valAcc};
+        try {
+            write(new StringBuilder(MAPPER.writeValueAsString(rec)).append('\n'));
+            out.flush();
+        } catch (IOException e) {
+            log.warn("Writing {} failed: {}", jsonl, e.toString());
+        }
+    }
+
+    private void write(CharSequence s) {
+        if (out == null) return;
+        try {
+            out.append(s);
+        } catch (IOException e) {
+            log.warn("Writing {} failed: {}", jsonl, e.toString());
+        }
+    }
+
+    /** Hängt die Samples dieses Laufs (Label {@code run}) an {@code x} an. */
+    void appendTo(Exposition x) {
+        String l = "run=\"" + run.replace("\"", "'") + "\"";
+        for (int i = 0; i < PHASES.length; i++) {
+            x.add("cnn_phase_seconds_total", "counter", l + ",phase=\"" + PHASES[i].key + "\"", totalNanos.get(i) / 1e9);
+        }
+        for (int i = 0; i < PHASES.length; i++) {
+            x.add("cnn_phase_calls_total", "counter", l + ",phase=\"" + PHASES[i].key + "\"", totalCount.get(i));
+        }
+        x.add("cnn_samples_total", "counter", l, gauges.get(Gauge.SAMPLES.ordinal()));
+        x.add("cnn_step", "gauge", l, gauges.get(Gauge.STEP.ordinal()));
+        x.add("cnn_epoch", "gauge", l, gauges.get(Gauge.EPOCH.ordinal()));
+        x.add("cnn_jvm_heap_bytes", "gauge", l + ",area=\"used\"", gauges.get(Gauge.HEAP_USED.ordinal()));
+        x.add("cnn_jvm_heap_bytes", "gauge", l + ",area=\"committed\"", gauges.get(Gauge.HEAP_COMMITTED.ordinal()));
+        x.add("cnn_native_ndarrays", "gauge", l, gauges.get(Gauge.NATIVE_ARRAYS.ordinal()));
+        double[] e = lastEpoch;
+        if (e.length > 0) {
+            x.add("cnn_samples_per_second", "gauge", l, e[0]);
+            String[] q = {"0.5", "0.9", "0.99"};
+            for (int i = 0; i < q.length; i++) {
+                x.add("cnn_batch_latency_seconds", "summary", l + ",quantile=\"" + q[i] + "\"", e[1 + i]);
+            }
+            String[] names = {"train_loss", "train_acc", "val_loss", "val_acc"};
+            for (int i = 0; i < names.length; i++) x.add("cnn_" + names[i], "gauge", l, e[4 + i]);
+        }
+    }
+
+    /** Prometheus-Textformat (0.0.4): Samples mehrerer Läufe je Familie, jede {@code # TYPE}-Zeile einmal. */
+    static final class Exposition {
+        private final Map<String, String> types = new LinkedHashMap<>();
+        private final Map<String, StringBuilder> samples = new LinkedHashMap<>();
+
+        void add(String name, String type, String labels, Object value) {
+            types.putIfAbsent(name, type);
+            samples.computeIfAbsent(name, k -> new StringBuilder())
+                    .append(name).append('{').append(labels).append("} ").append(value).append('\n');
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(2048);
+            types.forEach((name, type) -> sb.append("# TYPE ").append(name).append(' ').append(type).append('\n')
+                    .append(samples.get(name)));
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Ein {@code /metrics}-Endpunkt pro Port, den sich alle Läufe des Prozesses teilen (z. B. parallele
+     * Sweep-Jobs); jeder Lauf trägt sein Label {@code run}. Der Server endet mit dem letzten Lauf.
+     */
+    private static final class Endpoint {
+        private static final Map<Integer, Endpoint> OPEN = new HashMap<>();
+
+        private final int port;
+        private final HttpServer server;
+        private final List<TrainingInstrumentation> runs = new CopyOnWriteArrayList<>();
+
+        private Endpoint(int port) throws IOException {
+            this.port = port;
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "metrics-http");
+                t.setDaemon(true);
+                return t;
+            }));
+            server.createContext("/metrics", ex -> {
+                Exposition x = new Exposition();
+                for (TrainingInstrumentation run : runs) run.appendTo(x);
+                byte[] body = x.toString().getBytes(StandardCharsets.UTF_8);
+                ex.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4");
+                ex.sendResponseHeaders(200, body.length);
+                try (OutputStream os = ex.getResponseBody()) {
+                    os.write(body);
+                }
+            });
+            server.start();
+            log.info("Training metrics at http://{}:{}/metrics", InetAddress.getLoopbackAddress().getHostAddress(), port);
+        }
+
+        /** Meldet {@code run} an; {@code null}, wenn der Port nicht belegt werden kann. */
+        static synchronized Endpoint register(int port, TrainingInstrumentation run) {
+            Endpoint e = OPEN.get(port);
+            if (e == null) {
+                try {
+                    e = new Endpoint(port);
+                } catch (IOException ex) {
+                    log.warn("Metrics endpoint on port {} not available: {}", port, ex.toString());
+                    return null;
+                }
+                OPEN.put(port, e);
+            }
+            e.runs.add(run);
+            return e;
+        }
+
+        void unregister(TrainingInstrumentation run) {
+            synchronized (Endpoint.class) {
+                runs.remove(run);
+                if (runs.isEmpty()) {
+                    server.stop(0);
+                    OPEN.remove(port);
+                }
+            }
+        }
+    }
+
+    /**
+     * Logarithmisches Histogramm (4 Buckets pro Zweierpotenz, ~19 % Auflösung) – konstanter Speicher,
+     * keine Allokation pro Messwert.
+     */
+    static final class Histogram {
+        private static final int SUB = 4;
+        private final long[] buckets = new long[64 * SUB];
+        long count;
+        long sum;
+        long max;
+
+        void record(long ns) {
+            long v = Math.max(1, ns);
+            int exp = 63 - Long.numberOfLeadingZeros(v);
+            int sub = exp >= 2 ? (int) ((v >>> (exp - 2)) & 3) : 0;
+            buckets[exp * SUB + sub]++;
+            count++;
+            sum += ns;
+            if (ns > max) max = ns;
+        }
+
+        /** Obere Bucket-Grenze des Quantils {@code q} in Nanosekunden. */
+        long percentile(double q) {
+            if (count == 0) return 0;
+            long rank = (long) Math.ceil(q * count);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    int exp = i / SUB, sub = i % SUB;
+                    long upper = exp >= 2 ? (((long) (SUB + sub + 1)) << (exp - 2)) : (1L << (exp + 1));
+                    return Math.min(upper, max);
+                }
+            }
+            return max;
+        }
+
+        void reset() {
+            Arrays.fill(buckets, 0);
+            count = sum = max = 0;
+        }
+    }
+
+    @Name("de.djl.classification.TrainingPhase")
+    @Label("Training Phase")
+    @Category({"DJL", "Training"})
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+        @Label("Epoch")
+        int epoch;
+        @Label("Step")
+        long step;
+    }
+}
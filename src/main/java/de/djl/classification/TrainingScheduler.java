@@ -0,0 +1,14 @@
+package de.djl.classification;
+
+/**
+ * Entscheidet nach jeder Epoche von {@link ClassificationModel#fit}, ob das Training abgebrochen wird.
+ */
+public interface TrainingScheduler {
+
+    /**
+     * @param epoch   gerade beendete Epoche (0-basiert, relativ zum aktuellen {@code fit}-Aufruf)
+     * @param history Metriken aller bisherigen Epochen dieses Aufrufs
+     * @return {@code true}, wenn nicht weitertrainiert werden soll
+     */
+    boolean shouldStop(int epoch, ClassificationModel.History history);
+}
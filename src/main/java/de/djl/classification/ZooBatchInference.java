@@ -0,0 +1,180 @@
+package de.djl.classification;
+
+import ai.djl.MalformedModelException;
+import ai.djl.inference.Predictor;
+import ai.djl.modality.Classifications;
+import ai.djl.modality.cv.Image;
+import ai.djl.modality.cv.ImageFactory;
+import ai.djl.repository.zoo.ModelNotFoundException;
+import ai.djl.repository.zoo.ModelZoo;
+import ai.djl.repository.zoo.ZooModel;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durchsatz-Modus der Zoo-Inferenz: ein beliebiges Bildverzeichnis wird über einen begrenzten Decode-Pool
+ * gestreamt und von {@code zooThreads} Predictors per {@link Predictor#batchPredict} in Batches der Größe
+ * {@code zooBatchSize} klassifiziert. Alle Ergebnisse (Top-k) landen in einer CSV- oder JSONL-Datei.
+ */
+public class ZooBatchInference {
+    private static final Logger log = LoggerFactory.getLogger(ZooBatchInference.class);
+
+    private record Item(Path path, Image image) { }
+    private static final Item END = new Item(null, null);
+
+    public static void run(PipelineConfig cfg) throws IOException {
+        Path input = Paths.get(cfg.zooInput);
+        List<Path> files;
+        try (var w = Files.walk(input)) {
+            files = w.filter(Files::isRegularFile)
+                    .filter(p -> p.toString().toLowerCase(Locale.ROOT).matches(".*\\.(jpg|jpeg|png|bmp|gif|tif|tiff|webp)$"))
+                    .sorted()
+                    .toList();
+        }
+        String backbone = cfg.zooBackbone == null ? "resnet18" : cfg.zooBackbone.toLowerCase(Locale.ROOT);
+        Path outFile = cfg.zooOutput != null
+                ? Paths.get(cfg.zooOutput)
+                : Paths.get("output/zoo/" + backbone + "/predictions.jsonl");
+        boolean csv = outFile.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv");
+        Files.createDirectories(outFile.toAbsolutePath().getParent());
+
+        int threads = Math.max(1, cfg.zooThreads);
+        int batchSize = Math.max(1, cfg.zooBatchSize);
+        BlockingQueue<Item> queue = new ArrayBlockingQueue<>(batchSize * threads * 2);
+        ExecutorService decoders = Executors.newFixedThreadPool(Math.max(1, cfg.zooDecodeThreads));
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        AtomicLong scored = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        // Gesetzt, sobald ein Worker ausfällt: Decoder hören dann auf, statt in der vollen Queue zu blockieren.
+        AtomicBoolean aborted = new AtomicBoolean();
+        ObjectMapper om = new ObjectMapper();
+        long t0 = System.nanoTime();
+
+        try (ZooModel<Image, Classifications> model = ModelZoo.loadModel(CNNPipeline.zooCriteria(cfg));
+             BufferedWriter out = Files.newBufferedWriter(outFile)) {
+            MixedPrecision.forInference(model, MixedPrecision.parse(cfg.precision));
+            if (csv) {
+                StringBuilder header = new StringBuilder("path");
+                for (int k = 1; k <= cfg.zooTopK; k++) header.append(",class").append(k).append(",prob").append(k);
+                out.write(header.append('\n').toString());
+            }
+
+            for (Path p : files) {
+                decoders.submit(() -> {
+                    if (aborted.get()) return null;
+                    Item item;
+                    try {
+                        item = new Item(p, ImageFactory.getInstance().fromFile(p));
+                    } catch (IOException | RuntimeException e) {
+                        failed.incrementAndGet();
+                        log.warn("Skip (decode failed): {} -> {}", p, e.toString());
+                        return null;
+                    }
+                    try {
+                        while (!aborted.get() && !queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                            // warten, bis ein Worker Platz schafft oder abgebrochen wird
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                });
+            }
+            decoders.shutdown();
+
+            List<Future<?>> running = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                running.add(workers.submit(() -> {
+                    try (Predictor<Image, Classifications> predictor = model.newPredictor()) {
+                        List<Item> batch = new ArrayList<>(batchSize);
+                        while (true) {
+                            Item item = queue.take();
+                            if (item != END) batch.add(item);
+                            if (batch.size() == batchSize || (item == END && !batch.isEmpty())) {
+                                score(predictor, batch, cfg.zooTopK, csv, om, out);
+                                scored.addAndGet(batch.size());
+                                batch.clear();
+                            }
+                            if (item == END) return null;
+                        }
+                    }
+                }));
+            }
+
+            while (!decoders.awaitTermination(200, TimeUnit.MILLISECONDS)) checkWorkers(running);
+            for (int t = 0; t < threads; t++) {
+                while (!queue.offer(END, 200, TimeUnit.MILLISECONDS)) checkWorkers(running);
+            }
+            for (Future<?> f : running) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Zoo inference interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Zoo inference failed", e.getCause());
+        } catch (ModelNotFoundException | MalformedModelException e) {
+            throw new IOException("Cannot load zoo model " + backbone, e);
+        } finally {
+            aborted.set(true);
+            decoders.shutdownNow();
+            workers.shutdownNow();
+        }
+
+        double secs = (System.nanoTime() - t0) / 1e9;
+        log.info("Scored {} images ({} failed) in {} s ({} img/s) -> {}", scored.get(), failed.get(),
+                String.format(Locale.ROOT, "%.1f", secs), String.format(Locale.ROOT, "%.1f", scored.get() / Math.max(1e-9, secs)),
+                outFile.toAbsolutePath());
+    }
+
+    /** Ein Worker, der vor dem END-Marker endet, ist ausgefallen: dessen Fehler weiterreichen. */
+    private static void checkWorkers(List<Future<?>> running) throws ExecutionException, InterruptedException, IOException {
+        for (Future<?> f : running) {
+            if (f.isDone()) {
+                f.get();
+                throw new IOException("Inference worker stopped before all images were scored");
+            }
+        }
+    }
+
+    private static void score(Predictor<Image, Classifications> predictor, List<Item> batch, int topK,
+                              boolean csv, ObjectMapper om, BufferedWriter out) throws Exception {
+        List<Image> images = new ArrayList<>(batch.size());
+        for (Item item : batch) images.add(item.image());
+        List<Classifications> results = predictor.batchPredict(images);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < batch.size(); i++) {
+            List<Classifications.Classification> top = results.get(i).topK(topK);
+            if (csv) {
+                sb.append('"').append(batch.get(i).path().toString().replace("\"", "\"\"")).append('"');
+                for (Classifications.Classification c : top) {
+                    sb.append(",\"").append(c.getClassName().replace("\"", "\"\"")).append("\",")
+                            .append(String.format(Locale.ROOT, "%.6f", c.getProbability()));
+                }
+            } else {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("path", batch.get(i).path().toString());
+                List<Map<String, Object>> preds = new ArrayList<>();
+                for (Classifications.Classification c : top) {
+                    preds.add(Map.of("class", c.getClassName(), "probability", c.getProbability()));
+                }
+                row.put("topK", preds);
+                sb.append(om.writeValueAsString(row));
+            }
+            sb.append('\n');
+        }
+        synchronized (out) {
+            out.write(sb.toString());
+        }
+    }
+}
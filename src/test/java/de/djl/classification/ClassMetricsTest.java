@@ -0,0 +1,95 @@
+package de.djl.classification;
+
+import ai.djl.ndarray.NDArray;
+import ai.djl.ndarray.NDManager;
+import ai.djl.ndarray.types.Shape;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Klassenmetriken aus einer bekannten Konfusionsmatrix und die auf dem Device gezählte Matrix. */
+class ClassMetricsTest {
+    private static final double EPS = 1e-9;
+
+    @Test
+    void perClassMetricsOfKnownMatrix() {
+        // Zeile = wahre Klasse, Spalte = Vorhersage; "b" kommt im Split nicht vor, wird aber zweimal vorhergesagt
+        int[][] cm = {
+                {3, 1, 0},
+                {0, 0, 0},
+                {2, 1, 4},
+        };
+        List<ClassMetrics.PerClass> m = ClassMetrics.of(cm, List.of("a", "b", "c"));
+
+        ClassMetrics.PerClass a = m.get(0);
+        assertEquals(4, a.support());
+        assertEquals(5, a.predicted());
+        assertEquals(0.6, a.precision(), EPS);
+        assertEquals(0.75, a.recall(), EPS);
+        assertEquals(2.0 / 3, a.f1(), EPS);
+
+        ClassMetrics.PerClass b = m.get(1);
+        assertEquals(0, b.support());
+        assertEquals(2, b.predicted());
+        assertEquals(0.0, b.precision(), EPS);
+        assertEquals(0.0, b.recall(), EPS);
+        assertEquals(0.0, b.f1(), EPS);
+
+        ClassMetrics.PerClass c = m.get(2);
+        assertEquals(7, c.support());
+        assertEquals(4, c.predicted());
+        assertEquals(1.0, c.precision(), EPS);
+        assertEquals(4.0 / 7, c.recall(), EPS);
+        assertEquals(8.0 / 11, c.f1(), EPS);
+
+        // Klassen ohne Beispiele zählen nicht ins Makro-Mittel
+        assertEquals((2.0 / 3 + 8.0 / 11) / 2, ClassMetrics.macroF1(m), EPS);
+    }
+
+    @Test
+    void deviceConfusionMatchesHostCount() {
+        float[][] logits = {
+                {2.0f, 0.1f, 0.3f, 0.0f},
+                {0.2f, 1.5f, 0.1f, 0.4f},
+                {0.9f, 0.3f, 0.2f, 1.1f},
+                {0.1f, 0.2f, 3.0f, 0.0f},
+                {0.5f, 0.6f, 0.4f, 0.7f},
+                {1.2f, 0.2f, 0.1f, 0.3f},
+                {0.0f, 0.9f, 1.0f, 0.1f},
+        };
+        long[] labels = {0, 1, 0, 2, 1, 3, 1};
+        int classes = 4, topK = 2;
+
+        long[][] expected = new long[classes][classes];
+        long expectedTop = 0;
+        for (int i = 0; i < logits.length; i++) {
+            int pred = 0, higher = 0;
+            for (int k = 1; k < classes; k++) if (logits[i][k] > logits[i][pred]) pred = k;
+            for (int k = 0; k < classes; k++) if (logits[i][k] > logits[i][(int) labels[i]]) higher++;
+            expected[(int) labels[i]][pred]++;
+            if (higher < topK) expectedTop++;
+        }
+
+        float[] flat = new float[logits.length * classes];
+        for (int i = 0; i < logits.length; i++) System.arraycopy(logits[i], 0, flat, i * classes, classes);
+        try (NDManager manager = NDManager.newBaseManager();
+             ClassificationModel.DeviceMetrics metrics = new ClassificationModel.DeviceMetrics(manager, classes, topK)) {
+            NDArray preds = manager.create(flat, new Shape(logits.length, classes));
+            NDArray y = manager.create(labels);
+            // in zwei Batches, wie im Validierungs-Loop
+            metrics.add(manager.create(0f), preds.get("0:4"), y.get("0:4"));
+            metrics.add(manager.create(0f), preds.get("4:"), y.get("4:"));
+            metrics.sync();
+
+            int[][] cm = metrics.confusion();
+            for (int k = 0; k < classes; k++) {
+                assertArrayEquals(expected[k], Arrays.stream(cm[k]).asLongStream().toArray(), "row " + k);
+            }
+            assertEquals((double) expectedTop / logits.length, metrics.topKAccuracy(), EPS);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package de.djl.classification;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/** Rauchtest: Modell und abgeschaltete Instrumentierung lassen sich erzeugen (statische Initialisierung). */
+class ClassificationModelSmokeTest {
+
+    @Test
+    void instrumentationOffIsUsable() {
+        TrainingInstrumentation off = TrainingInstrumentation.OFF;
+        long t = off.begin(TrainingInstrumentation.Phase.FORWARD);
+        off.end(TrainingInstrumentation.Phase.FORWARD, t);
+        off.endBatch(1, 1, 8);
+    }
+
+    @Test
+    void constructsModelForEverySetting() throws Exception {
+        for (Settings.Setting s : Settings.loadFromResources("settings.json").all()) {
+            ClassificationModel cm = new ClassificationModel(s, 2, false);
+            assertNotNull(cm.getModel().getBlock());
+            cm.getModel().close();
+        }
+    }
+}
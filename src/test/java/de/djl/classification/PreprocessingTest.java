@@ -0,0 +1,76 @@
+package de.djl.classification;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Parallele Vorverarbeitung liefert denselben Split und dieselben Protokolle wie die sequentielle. */
+class PreprocessingTest {
+
+    @Test
+    void parallelPreparationMatchesSequential(@TempDir Path tmp) throws IOException {
+        Path raw = tmp.resolve("raw");
+        for (String cls : List.of("cats", "dogs", "owls")) {
+            Path dir = Files.createDirectories(raw.resolve(cls));
+            for (int i = 0; i < 12; i++) {
+                writePng(dir.resolve(String.format("%s_%02d.png", cls, i)), new Color(i * 20, cls.length() * 30, 90));
+            }
+        }
+        // Kein Bild: scheitert schon an der Header-Prüfung
+        Files.write(raw.resolve("dogs/broken.jpg"), new byte[]{1, 2, 3, 4, 5});
+        // Gültiger Header, abgeschnittene Bilddaten: scheitert erst beim Dekodieren
+        byte[] png = pngBytes(new Color(10, 200, 30));
+        Files.write(raw.resolve("owls/truncated.png"), Arrays.copyOf(png, 40));
+
+        Preprocessing.PreparedPaths seq = Preprocessing.prepareDatasets(
+                raw, tmp.resolve("seq"), 0.25, 42L, "run", 32, false, 1);
+        Preprocessing.PreparedPaths par = Preprocessing.prepareDatasets(
+                raw, tmp.resolve("par"), 0.25, 42L, "run", 32, false, 4);
+
+        assertArrayEquals(Files.readAllBytes(seq.metadataJson()), Files.readAllBytes(par.metadataJson()));
+        Path skipped = seq.outRoot().resolve("skipped_images.txt");
+        assertTrue(Files.exists(skipped));
+        assertEquals(2, Files.readAllLines(skipped).size());
+        assertArrayEquals(Files.readAllBytes(skipped), Files.readAllBytes(par.outRoot().resolve("skipped_images.txt")));
+        assertEquals(listing(seq.trainRoot()), listing(par.trainRoot()));
+        assertEquals(listing(seq.valRoot()), listing(par.valRoot()));
+    }
+
+    private static List<String> listing(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile).map(p -> root.relativize(p).toString()).sorted().toList();
+        }
+    }
+
+    private static void writePng(Path file, Color color) throws IOException {
+        Files.write(file, pngBytes(color));
+    }
+
+    private static byte[] pngBytes(Color color) throws IOException {
+        BufferedImage img = new BufferedImage(48, 40, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, 48, 40);
+        g.setColor(Color.WHITE);
+        g.drawLine(0, 0, 47, 39);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", out);
+        return out.toByteArray();
+    }
+}